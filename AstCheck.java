@@ -0,0 +1,144 @@
+import java.io.*;
+import java.util.*;
+
+/****
+ * Round-trip check of AstWriter and AstReader.
+ *
+ * Each program is parsed and name-analyzed, written with AstWriter and
+ * read back with AstReader.  The tree read back must unparse (with its
+ * symbols) to the same text as the original, and must write to the same
+ * bytes, which also checks that identifiers that shared a symbol still
+ * do.  Truncations of the bytes (every one for small programs, about a
+ * thousand spread over the others) and a thousand copies with a byte
+ * changed at random must either load into a tree that unparses or be
+ * refused with an IOException.
+ * The programs are the files named on the command line plus generated
+ * ones; for each, the size of the source and of its binary form and the
+ * time to parse, analyze and unparse it and to load it are printed.
+ *
+ * Usage: java AstCheck [-programs N] [-seed N] [file ...]
+ *   -programs N   number of generated programs             (default 5)
+ *   -seed N       seed for the programs and changed bytes  (default 1)
+ * Exits with status 1 if any check failed.
+ ****/
+
+public class AstCheck {
+    private static final int REPEAT = 20;      // timed runs per program
+
+    public static void main(String[] args) throws Exception {
+        int programs = 5;
+        long seed = 1;
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-programs") && i + 1 < args.length) {
+                programs = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+
+        Random rand = new Random(seed);
+        int failed = 0;
+        for (String name : files) {
+            if (!check(name, ScanCheck.read(name), rand)) {
+                failed++;
+            }
+        }
+        for (int i = 0; i < programs; i++) {
+            GenBase gen = new GenBase();
+            gen.seed = seed + i;
+            if (!check("generated program " + i, gen.generate(), rand)) {
+                failed++;
+            }
+        }
+        System.out.println((files.size() + programs) + " programs, " +
+                           failed + " failed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    static boolean check(String name, String src, Random rand)
+        throws Exception
+    {
+        ProgramNode root = analyzed(src);
+        if (root == null) {
+            System.out.println(name + ": does not parse, skipped");
+            return true;
+        }
+        byte[] bytes = AstWriter.write(root);
+        ProgramNode loaded = AstReader.read(bytes);
+        if (!unparse(root).equals(unparse(loaded))) {
+            System.out.println(name + ": tree read back unparses differently");
+            return false;
+        }
+        if (!Arrays.equals(bytes, AstWriter.write(loaded))) {
+            System.out.println(name + ": tree read back writes differently");
+            return false;
+        }
+        int step = Math.max(1, bytes.length / 1000);
+        for (int n = 0; n < bytes.length; n += n < 64 ? 1 : step) {
+            if (!loadsOrRefuses(name, Arrays.copyOf(bytes, n))) {
+                return false;
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            byte[] changed = bytes.clone();
+            changed[rand.nextInt(changed.length)] = (byte) rand.nextInt(256);
+            if (!loadsOrRefuses(name, changed)) {
+                return false;
+            }
+        }
+
+        long parse = Long.MAX_VALUE;
+        long load = Long.MAX_VALUE;
+        for (int i = 0; i < REPEAT; i++) {
+            long t0 = System.nanoTime();
+            analyzed(src);
+            long t1 = System.nanoTime();
+            AstReader.read(bytes);
+            long t2 = System.nanoTime();
+            parse = Math.min(parse, t1 - t0);
+            load = Math.min(load, t2 - t1);
+        }
+        System.out.printf("%s: %d chars, %d bytes; parse, analyze and unparse %.2f ms," +
+                          " load %.2f ms%n", name, src.length(), bytes.length,
+                          parse / 1e6, load / 1e6);
+        return true;
+    }
+
+    // true if bytes load into a tree that unparses, or are refused with an
+    // IOException
+    private static boolean loadsOrRefuses(String name, byte[] bytes) {
+        try {
+            unparse(AstReader.read(bytes));     // what loads must unparse
+        } catch (IOException ex) {
+            // refused, as it should be
+        } catch (RuntimeException | StackOverflowError ex) {
+            System.out.println(name + ": " + bytes.length +
+                               " damaged bytes made AstReader throw " + ex);
+            return false;
+        }
+        return true;
+    }
+
+    // src parsed and name-analyzed (and so unparsed, if it has no
+    // errors), or null if it doesn't parse
+    private static ProgramNode analyzed(String src) {
+        ProgramNode root = ScanCheck.parse(src);
+        if (root != null) {
+            ScanCheck.analyze(root);
+        }
+        return root;
+    }
+
+    private static String unparse(ProgramNode root) {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        root.unparse(out, 0);
+        out.flush();
+        return text.toString();
+    }
+}
@@ -0,0 +1,325 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * AstReader
+ *
+ * Loads a tree written by AstWriter (see there for the format).  The
+ * nodes are built with their usual constructors, the identifiers get back
+ * the symbols they were resolved to, and identifiers that named the same
+ * declaration share one Sym again.  A tuple type's symbol gets a SymTable
+ * holding its fields.  Equal strings are one String, as if interned by a
+ * NameTable.
+ *
+ * Input that is not a whole tree in the current format is reported as an
+ * IOException.  FlatAst reads the same format, using header, finish and
+ * the methods that read one field (get, varint, string, sym and so on).
+ */
+class AstReader {
+    private byte[] buf;
+    private int pos;
+    private int end;
+    private List<String> strings = new ArrayList<String>();
+    private List<Sym> syms = new ArrayList<Sym>();
+    private int lastLine = 0;
+
+    AstReader(byte[] buf, int off, int len) {
+        this.buf = buf;
+        this.pos = off;
+        this.end = off + len;
+    }
+
+    /**
+     * Returns the tree whose binary form is buf.
+     */
+    static ProgramNode read(byte[] buf) throws IOException {
+        return new AstReader(buf, 0, buf.length).readProgram();
+    }
+
+    ProgramNode readProgram() throws IOException {
+        try {
+            header();
+            ProgramNode root = child(ProgramNode.class);
+            finish();
+            return root;
+        } catch (ClassCastException | IndexOutOfBoundsException |
+                 IllegalArgumentException ex) {
+            // a child of the wrong kind, or a reference to nothing
+            throw new IOException("bad AST: " + ex, ex);
+        }
+    }
+
+    // reads MAGIC and FORMAT
+    void header() throws IOException {
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            magic = (magic << 8) | get();
+        }
+        if (magic != AstWriter.MAGIC) {
+            throw new IOException("not an AST");
+        }
+        int format = varint();
+        if (format != AstWriter.FORMAT) {
+            throw new IOException("AST format " + format + ", expected " +
+                                  AstWriter.FORMAT);
+        }
+    }
+
+    // checks that the whole input was read
+    void finish() throws IOException {
+        if (pos != end) {
+            throw new IOException("extra bytes after the AST");
+        }
+    }
+
+    private ASTnode node() throws IOException {
+        int tag = get();
+        switch (tag) {
+        case AstWriter.NULL:
+            return null;
+        case AstWriter.PROGRAM:
+            return new ProgramNode(child(DeclListNode.class));
+        case AstWriter.DECL_LIST:
+            return new DeclListNode(list(DeclNode.class));
+        case AstWriter.STMT_LIST:
+            return new StmtListNode(list(StmtNode.class));
+        case AstWriter.EXP_LIST:
+            return new ExpListNode(list(ExpNode.class));
+        case AstWriter.FORMALS_LIST:
+            return new FormalsListNode(list(FormalDeclNode.class));
+        case AstWriter.FCTN_BODY:
+            return new FctnBodyNode(child(DeclListNode.class),
+                                    child(StmtListNode.class));
+        case AstWriter.VAR_DECL:
+            return new VarDeclNode(child(TypeNode.class), child(IdNode.class),
+                                   signed());
+        case AstWriter.FCTN_DECL:
+            return new FctnDeclNode(child(TypeNode.class), child(IdNode.class),
+                                    child(FormalsListNode.class),
+                                    child(FctnBodyNode.class));
+        case AstWriter.FORMAL_DECL:
+            return new FormalDeclNode(child(TypeNode.class), child(IdNode.class));
+        case AstWriter.TUPLE_DECL:
+            return new TupleDeclNode(child(IdNode.class), child(DeclListNode.class));
+        case AstWriter.LOGICAL:
+            return new LogicalNode();
+        case AstWriter.INTEGER:
+            return new IntegerNode();
+        case AstWriter.VOID:
+            return new VoidNode();
+        case AstWriter.TUPLE:
+            return new TupleNode(child(IdNode.class));
+        case AstWriter.ASSIGN_STMT:
+            return new AssignStmtNode(child(AssignExpNode.class));
+        case AstWriter.POST_INC_STMT:
+            return new PostIncStmtNode(child(ExpNode.class));
+        case AstWriter.POST_DEC_STMT:
+            return new PostDecStmtNode(child(ExpNode.class));
+        case AstWriter.IF_STMT:
+            return new IfStmtNode(child(ExpNode.class), child(DeclListNode.class),
+                                  child(StmtListNode.class));
+        case AstWriter.IF_ELSE_STMT:
+            return new IfElseStmtNode(child(ExpNode.class), child(DeclListNode.class),
+                                      child(StmtListNode.class),
+                                      child(DeclListNode.class),
+                                      child(StmtListNode.class));
+        case AstWriter.WHILE_STMT:
+            return new WhileStmtNode(child(ExpNode.class), child(DeclListNode.class),
+                                     child(StmtListNode.class));
+        case AstWriter.READ_STMT:
+            return new ReadStmtNode(child(ExpNode.class));
+        case AstWriter.WRITE_STMT:
+            return new WriteStmtNode(child(ExpNode.class));
+        case AstWriter.CALL_STMT:
+            return new CallStmtNode(child(CallExpNode.class));
+        case AstWriter.RETURN_STMT:
+            return new ReturnStmtNode((ExpNode) node());     // may be null
+        case AstWriter.TRUE: {
+            int line = line();
+            return new TrueNode(line, varint());
+        }
+        case AstWriter.FALSE: {
+            int line = line();
+            return new FalseNode(line, varint());
+        }
+        case AstWriter.ID: {
+            int line = line();
+            IdNode id = new IdNode(line, varint(), string());
+            id.setSym(sym());
+            return id;
+        }
+        case AstWriter.INT_LIT: {
+            int line = line();
+            return new IntLitNode(line, varint(), signed());
+        }
+        case AstWriter.STR_LIT: {
+            int line = line();
+            return new StrLitNode(line, varint(), string());
+        }
+        case AstWriter.TUPLE_ACCESS:
+            return new TupleAccessNode(child(ExpNode.class), child(IdNode.class));
+        case AstWriter.ASSIGN_EXP:
+            return new AssignExpNode(child(ExpNode.class), child(ExpNode.class));
+        case AstWriter.CALL_EXP:
+            return new CallExpNode(child(IdNode.class), (ExpListNode) node());
+        case AstWriter.NOT:
+            return new NotNode(child(ExpNode.class));
+        case AstWriter.UNARY_MINUS:
+            return new UnaryMinusNode(child(ExpNode.class));
+        case AstWriter.PLUS:
+            return new PlusNode(child(ExpNode.class), child(ExpNode.class));
+        case AstWriter.MINUS:
+            return new MinusNode(child(ExpNode.class), child(ExpNode.class));
+        case AstWriter.TIMES:
+            return new TimesNode(child(ExpNode.class), child(ExpNode.class));
+        case AstWriter.DIVIDE:
+            return new DivideNode(child(ExpNode.class), child(ExpNode.class));
+        case AstWriter.EQUALS:
+            return new EqualsNode(child(ExpNode.class), child(ExpNode.class));
+        case AstWriter.NOT_EQUALS:
+            return new NotEqualsNode(child(ExpNode.class), child(ExpNode.class));
+        case AstWriter.GREATER:
+            return new GreaterNode(child(ExpNode.class), child(ExpNode.class));
+        case AstWriter.GREATER_EQ:
+            return new GreaterEqNode(child(ExpNode.class), child(ExpNode.class));
+        case AstWriter.LESS:
+            return new LessNode(child(ExpNode.class), child(ExpNode.class));
+        case AstWriter.LESS_EQ:
+            return new LessEqNode(child(ExpNode.class), child(ExpNode.class));
+        case AstWriter.AND:
+            return new AndNode(child(ExpNode.class), child(ExpNode.class));
+        case AstWriter.OR:
+            return new OrNode(child(ExpNode.class), child(ExpNode.class));
+        default:
+            throw new IOException("bad node tag " + tag);
+        }
+    }
+
+    // a child that must be there
+    private <T extends ASTnode> T child(Class<T> type) throws IOException {
+        ASTnode node = node();
+        if (node == null) {
+            throw new IOException("missing " + type.getName());
+        }
+        return type.cast(node);
+    }
+
+    private <T extends ASTnode> List<T> list(Class<T> type) throws IOException {
+        int n = varint();
+        if (n < 0 || n > end - pos) {
+            throw new IOException("bad list length " + n);
+        }
+        List<T> nodes = new ArrayList<T>(n);
+        for (int i = 0; i < n; i++) {
+            nodes.add(child(type));
+        }
+        return nodes;
+    }
+
+    int get() throws IOException {
+        if (pos == end) {
+            throw new EOFException("AST ends early");
+        }
+        return buf[pos++] & 0xff;
+    }
+
+    // steps back over the byte get() returned last
+    void unget() {
+        pos--;
+    }
+
+    int varint() throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = get();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("bad varint");
+    }
+
+    int signed() throws IOException {
+        int v = varint();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // the line of a position; its column follows
+    int line() throws IOException {
+        lastLine += signed();
+        return lastLine;
+    }
+
+    String string() throws IOException {
+        int i = varint();
+        if (i > 0) {
+            return strings.get(i - 1);
+        }
+        int n = varint();
+        if (n < 0 || n > end - pos) {
+            throw new IOException("bad string length " + n);
+        }
+        String s = new String(buf, pos, n, StandardCharsets.UTF_8);
+        pos += n;
+        strings.add(s);
+        return s;
+    }
+
+    Sym sym() throws IOException {
+        int i = varint();
+        if (i == 0) {
+            return null;
+        } else if (i > 1) {
+            return syms.get(i - 2);
+        }
+        int kind = get();
+        int index = syms.size();
+        syms.add(null);          // numbered before its fields are read
+        Sym sym;
+        switch (kind) {
+        case AstWriter.SYM:
+            sym = new Sym(string());
+            break;
+        case AstWriter.FN_SYM: {
+            String ret = string();
+            int n = varint();
+            LinkedList<String> params = new LinkedList<String>();
+            for (int k = 0; k < n; k++) {
+                params.add(string());
+            }
+            sym = new FnSym(ret, params);
+            break;
+        }
+        case AstWriter.TUPLE_SYM: {
+            String tupleName = string();
+            sym = new TupleSym(tupleName, string());
+            break;
+        }
+        case AstWriter.TUPLE_DEF: {
+            SymTable fields = new SymTable();
+            sym = new TupleDefSym(string(), fields);
+            syms.set(index, sym);
+            int n = varint();
+            for (int k = 0; k < n; k++) {
+                String name = string();
+                Sym field = sym();
+                if (field == null) {
+                    throw new IOException("tuple field without a symbol");
+                }
+                try {
+                    fields.tryAddDecl(name, field);
+                } catch (EmptySymTableException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+            break;
+        }
+        default:
+            throw new IOException("bad symbol kind " + kind);
+        }
+        syms.set(index, sym);
+        return sym;
+    }
+}
@@ -0,0 +1,234 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * AstWriter
+ *
+ * Writes an AST, with the symbols name analysis resolved its identifiers
+ * to, in a compact binary form that AstReader loads back much faster than
+ * the program can be scanned, parsed and analyzed again.
+ *
+ * Each node writes itself (ASTnode.write) as a tag followed by its fields
+ * and children in order; a missing child is the tag NULL, and a list is
+ * its length followed by its elements.  Numbers are varints: 7 bits a
+ * byte, low bits first, with the high bit set on all but the last byte;
+ * signed numbers are zigzag-encoded first, so small negative numbers stay
+ * short.  A position is the line, as the difference from the line of the
+ * position before it, and the column.
+ *
+ * Strings (identifiers, string literals and the names in symbols) are
+ * written once: the first occurrence as 0, its length and its UTF-8
+ * bytes, and each later one as 1 plus the number of the earlier one.
+ * Symbols are written the same way, so identifiers that name the same
+ * declaration share one Sym again when the tree is read back: 0 for no
+ * symbol, 1 and the symbol for a new one, or 2 plus the number of an
+ * earlier one.  A symbol is its kind and
+ *   SYM:        type
+ *   FN_SYM:     return type, number of parameters, parameter types
+ *   TUPLE_SYM:  tuple type name, variable name
+ *   TUPLE_DEF:  name, number of fields, and for each its name and symbol
+ *
+ * The whole is preceded by MAGIC and FORMAT, to be changed whenever the
+ * encoding or the nodes change.
+ */
+class AstWriter {
+    static final int MAGIC = 0x50344153;    // "P4AS"
+    static final int FORMAT = 1;
+
+    // node tags
+    static final int NULL = 0;
+    static final int PROGRAM = 1;
+    static final int DECL_LIST = 2;
+    static final int STMT_LIST = 3;
+    static final int EXP_LIST = 4;
+    static final int FORMALS_LIST = 5;
+    static final int FCTN_BODY = 6;
+    static final int VAR_DECL = 7;
+    static final int FCTN_DECL = 8;
+    static final int FORMAL_DECL = 9;
+    static final int TUPLE_DECL = 10;
+    static final int LOGICAL = 11;
+    static final int INTEGER = 12;
+    static final int VOID = 13;
+    static final int TUPLE = 14;
+    static final int ASSIGN_STMT = 15;
+    static final int POST_INC_STMT = 16;
+    static final int POST_DEC_STMT = 17;
+    static final int IF_STMT = 18;
+    static final int IF_ELSE_STMT = 19;
+    static final int WHILE_STMT = 20;
+    static final int READ_STMT = 21;
+    static final int WRITE_STMT = 22;
+    static final int CALL_STMT = 23;
+    static final int RETURN_STMT = 24;
+    static final int TRUE = 25;
+    static final int FALSE = 26;
+    static final int ID = 27;
+    static final int INT_LIT = 28;
+    static final int STR_LIT = 29;
+    static final int TUPLE_ACCESS = 30;
+    static final int ASSIGN_EXP = 31;
+    static final int CALL_EXP = 32;
+    static final int NOT = 33;
+    static final int UNARY_MINUS = 34;
+    static final int PLUS = 35;
+    static final int MINUS = 36;
+    static final int TIMES = 37;
+    static final int DIVIDE = 38;
+    static final int EQUALS = 39;
+    static final int NOT_EQUALS = 40;
+    static final int GREATER = 41;
+    static final int GREATER_EQ = 42;
+    static final int LESS = 43;
+    static final int LESS_EQ = 44;
+    static final int AND = 45;
+    static final int OR = 46;
+
+    // symbol kinds
+    static final int SYM = 0;
+    static final int FN_SYM = 1;
+    static final int TUPLE_SYM = 2;
+    static final int TUPLE_DEF = 3;
+
+    private byte[] buf = new byte[1 << 12];
+    private int count = 0;
+    private HashMap<String, Integer> strings = new HashMap<String, Integer>();
+    private IdentityHashMap<Sym, Integer> syms = new IdentityHashMap<Sym, Integer>();
+    private int lastLine = 0;
+
+    AstWriter() {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            put(MAGIC >>> shift);
+        }
+        varint(FORMAT);
+    }
+
+    /**
+     * Returns the binary form of the tree rooted at root.
+     */
+    static byte[] write(ProgramNode root) {
+        AstWriter out = new AstWriter();
+        root.write(out);
+        return out.toByteArray();
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    void tag(int tag) {
+        put(tag);
+    }
+
+    // a child node, or NULL for none
+    void node(ASTnode n) {
+        if (n == null) {
+            put(NULL);
+        } else {
+            n.write(this);
+        }
+    }
+
+    void list(List<? extends ASTnode> nodes) {
+        varint(nodes.size());
+        for (ASTnode n : nodes) {
+            node(n);
+        }
+    }
+
+    void varint(int v) {
+        while ((v & ~0x7f) != 0) {
+            put((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        put(v);
+    }
+
+    void signed(int v) {
+        varint((v << 1) ^ (v >> 31));
+    }
+
+    void position(int lineNum, int charNum) {
+        signed(lineNum - lastLine);
+        varint(charNum);
+        lastLine = lineNum;
+    }
+
+    void string(String s) {
+        Integer i = strings.get(s);
+        if (i != null) {
+            varint(i + 1);
+            return;
+        }
+        strings.put(s, strings.size());
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        varint(0);
+        varint(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, count, bytes.length);
+        count += bytes.length;
+    }
+
+    void sym(Sym sym) {
+        if (sym == null) {
+            varint(0);
+            return;
+        }
+        Integer i = syms.get(sym);
+        if (i != null) {
+            varint(i + 2);
+            return;
+        }
+        // numbered before its fields are written, as AstReader numbers it
+        syms.put(sym, syms.size());
+        varint(1);
+        if (sym instanceof FnSym) {
+            FnSym fn = (FnSym) sym;
+            put(FN_SYM);
+            string(fn.getReturnType());
+            varint(fn.getParamTypes().size());
+            for (String param : fn.getParamTypes()) {
+                string(param);
+            }
+        } else if (sym instanceof TupleSym) {
+            TupleSym t = (TupleSym) sym;
+            put(TUPLE_SYM);
+            string(t.getTupleName());
+            string(t.getVarName());
+        } else if (sym instanceof TupleDefSym) {
+            TupleDefSym def = (TupleDefSym) sym;
+            put(TUPLE_DEF);
+            string(def.toString());
+            Map<String, Sym> fields;
+            try {
+                fields = def.getSymTable().localDecls();
+            } catch (EmptySymTableException ex) {
+                throw new IllegalStateException(ex);  // a tuple has one scope
+            }
+            varint(fields.size());
+            for (Map.Entry<String, Sym> e : fields.entrySet()) {
+                string(e.getKey());
+                sym(e.getValue());
+            }
+        } else if (sym.getClass() == Sym.class) {
+            put(SYM);
+            string(sym.getType());
+        } else {
+            throw new IllegalArgumentException("unknown symbol " +
+                                               sym.getClass().getName());
+        }
+    }
+
+    private void put(int b) {
+        if (count == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        buf[count++] = (byte) b;
+    }
+
+    private void ensure(int n) {
+        if (buf.length - count < n) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + n));
+        }
+    }
+}
@@ -0,0 +1,419 @@
+import java.io.*;
+import java_cup.runtime.*;
+
+/**
+ * BaseScanner
+ *
+ * A hand-written scanner for the base language, an alternative to the
+ * table-driven Yylex that JLex generates from base.jlex.  It returns the
+ * same tokens, with the same positions and values, and reports the same
+ * errors and warnings as Yylex, including Yylex's quirks: the string
+ * literal rules are matched longest-first exactly as JLex would, an
+ * unterminated string doesn't advance the character number, and a
+ * carriage return outside a string or comment is a fatal "Unmatched
+ * Input" error.  Characters above 127, which make Yylex fail, are
+ * reported as illegal characters instead.
+ *
+ * The whole input is read into one buffer when the first token is asked
+ * for, and tokens are recognized with a switch on their first character.
+ */
+class BaseScanner implements java_cup.runtime.Scanner {
+    private Reader in;            // null once it has been read
+    private char[] buf;
+    private int len;              // number of characters in buf
+    private int pos;              // index of the next character to scan
+
+    private int lineNum = 1;      // line of the next character
+    private int charNum = 1;      // as maintained by the base.jlex rules
+    private boolean lastWasCr = false;
+
+    // The table identifiers are interned in, by default one of this
+    // scanner's own, so the names live no longer than the scanner.
+    private NameTable names = new NameTable();
+
+    BaseScanner(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Makes this scanner start over on a new input, keeping its buffer, so
+     * one scanner can be used for many files in turn.
+     */
+    void reset(Reader in) {
+        this.in = in;
+        len = 0;
+        pos = 0;
+        lineNum = 1;
+        charNum = 1;
+        lastWasCr = false;
+    }
+
+    /**
+     * Interns identifiers in the given table instead, e.g. to give each
+     * file a reused scanner reads a table of its own.
+     */
+    void setNameTable(NameTable names) {
+        this.names = names;
+    }
+
+    public Symbol next_token() throws IOException {
+        if (in != null) {
+            readAll();
+        }
+        while (pos < len) {
+            int start = pos;
+            char c = buf[pos];
+            if (c == '\n') {
+                // "\r\n" counts as one line break
+                if (!lastWasCr) {
+                    lineNum++;
+                }
+                lastWasCr = false;
+                charNum = 1;
+                pos++;
+                continue;
+            }
+            lastWasCr = false;
+
+            switch (c) {
+            case ' ':
+            case '\t':
+                do {
+                    pos++;
+                } while (pos < len && (buf[pos] == ' ' || buf[pos] == '\t'));
+                charNum += pos - start;
+                continue;
+
+            case '!':
+                if (pos + 1 < len && buf[pos + 1] == '!') {
+                    skipComment();
+                    continue;
+                }
+                illegal(c);
+                continue;
+
+            case '$':
+                skipComment();
+                continue;
+
+            case '"': {
+                Symbol S = string();
+                if (S != null) {
+                    return S;
+                }
+                continue;
+            }
+
+            case '{': return op(sym.LCURLY, 1);
+            case '}': return op(sym.RCURLY, 1);
+            case '(': return op(sym.LPAREN, 1);
+            case ')': return op(sym.RPAREN, 1);
+            case '[': return op(sym.LSQBRACKET, 1);
+            case ']': return op(sym.RSQBRACKET, 1);
+            case ':': return op(sym.COLON, 1);
+            case ',': return op(sym.COMMA, 1);
+            case '.': return op(sym.DOT, 1);
+            case '&': return op(sym.AND, 1);
+            case '|': return op(sym.OR, 1);
+            case '*': return op(sym.TIMES, 1);
+            case '/': return op(sym.DIVIDE, 1);
+
+            case '>':
+                if (next('>')) return op(sym.INPUTOP, 2);
+                if (next('=')) return op(sym.GREATEREQ, 2);
+                return op(sym.GREATER, 1);
+            case '<':
+                if (next('<')) return op(sym.OUTPUTOP, 2);
+                if (next('=')) return op(sym.LESSEQ, 2);
+                return op(sym.LESS, 1);
+            case '=':
+                if (next('=')) return op(sym.EQUALS, 2);
+                return op(sym.ASSIGN, 1);
+            case '~':
+                if (next('=')) return op(sym.NOTEQUALS, 2);
+                return op(sym.NOT, 1);
+            case '+':
+                if (next('+')) return op(sym.PLUSPLUS, 2);
+                return op(sym.PLUS, 1);
+            case '-':
+                if (next('-')) return op(sym.MINUSMINUS, 2);
+                return op(sym.MINUS, 1);
+
+            case '\r':
+                // no base.jlex rule matches a carriage return here
+                throw new Error("Lexical Error: Unmatched Input.");
+
+            default:
+                if (isLetter(c) || c == '_') {
+                    return word();
+                }
+                if (isDigit(c)) {
+                    return intLiteral();
+                }
+                illegal(c);
+                continue;
+            }
+        }
+        return new Symbol(sym.EOF);
+    }
+
+    // an operator or punctuation token of n characters
+    private Symbol op(int kind, int n) {
+        Symbol S = new Symbol(kind, lineNum, charNum);
+        pos += n;
+        charNum += n;
+        return S;
+    }
+
+    // true if the character after the current one is c
+    private boolean next(char c) {
+        return pos + 1 < len && buf[pos + 1] == c;
+    }
+
+    private void illegal(char c) {
+        ErrMsg.fatal(lineNum, charNum, "illegal character ignored: " + c);
+        pos++;
+        charNum++;
+    }
+
+    // "!!" or "$" up to the end of the line; the character number isn't
+    // updated, as in base.jlex
+    private void skipComment() {
+        int start = pos;
+        while (pos < len && buf[pos] != '\n') {
+            pos++;
+        }
+        countLines(start, pos);
+    }
+
+    // a keyword, True, False or an identifier
+    private Symbol word() {
+        int start = pos;
+        do {
+            pos++;
+        } while (pos < len && (isLetter(buf[pos]) || isDigit(buf[pos]) ||
+                               buf[pos] == '_'));
+        int n = pos - start;
+        int kind = keyword(start, n);
+        Symbol S;
+        if (kind == sym.TRUE || kind == sym.FALSE) {
+            S = new TokenVal(kind, lineNum, charNum);
+        } else if (kind >= 0) {
+            S = new Symbol(kind, lineNum, charNum);
+        } else {
+            String idVal = names.intern(buf, start, n);
+            S = new IdTokenVal(sym.ID, lineNum, charNum, idVal);
+        }
+        charNum += n;
+        return S;
+    }
+
+    // the sym constant of the keyword buf[start..start+n), or -1
+    private int keyword(int start, int n) {
+        switch (buf[start]) {
+        case 'v': return is(start, n, "void") ? sym.VOID : -1;
+        case 'l': return is(start, n, "logical") ? sym.LOGICAL : -1;
+        case 'i':
+            if (is(start, n, "integer")) return sym.INTEGER;
+            return is(start, n, "if") ? sym.IF : -1;
+        case 'T': return is(start, n, "True") ? sym.TRUE : -1;
+        case 'F': return is(start, n, "False") ? sym.FALSE : -1;
+        case 't': return is(start, n, "tuple") ? sym.TUPLE : -1;
+        case 'r':
+            if (is(start, n, "read")) return sym.READ;
+            return is(start, n, "return") ? sym.RETURN : -1;
+        case 'w':
+            if (is(start, n, "write")) return sym.WRITE;
+            return is(start, n, "while") ? sym.WHILE : -1;
+        case 'e': return is(start, n, "else") ? sym.ELSE : -1;
+        default:  return -1;
+        }
+    }
+
+    private boolean is(int start, int n, String word) {
+        if (n != word.length()) {
+            return false;
+        }
+        for (int i = 1; i < n; i++) {
+            if (buf[start + i] != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Symbol intLiteral() {
+        int start = pos;
+        do {
+            pos++;
+        } while (pos < len && isDigit(buf[pos]));
+        int intVal = Yylex.intLiteral(buf, start, pos - start);
+        if (intVal < 0) {
+            ErrMsg.warn(lineNum, charNum,
+                        "integer literal too large - using max value");
+            intVal = Integer.MAX_VALUE;
+        }
+        Symbol S = new IntLitTokenVal(sym.INTLITERAL, lineNum, charNum, intVal);
+        charNum += pos - start;
+        return S;
+    }
+
+    /**
+     * Scans a string literal, or reports the broken one starting at the
+     * current '"' and returns null.  base.jlex has four rules for strings;
+     * this finds where the longest match of each would end and picks the
+     * longest, the earliest rule winning ties, as JLex does:
+     *   1  "(A|\E)*"            a string literal
+     *   2  "(A|\E)*             unterminated
+     *   3  "(A|\E)*\B[^\n"]*"   bad escape
+     *   4  "(A|\E)*(\B)?(A|\E)*\\?   unterminated with bad escape
+     * where A is any character but newline, '"' and '\', E an escapable
+     * character and B a character that is neither escapable nor '?'.
+     */
+    private Symbol string() {
+        int start = pos;
+
+        // end of the longest "(A|\E)*, noting the \s escapes (which match
+        // \B too) and the \" escapes that may end rule 3 after one
+        int g = start + 1;
+        int end3 = -1;
+        boolean badBefore = false;   // a \s since the last \"
+        while (g < len) {
+            char c = buf[g];
+            if (c == '\n' || c == '"') {
+                break;
+            }
+            if (c != '\\') {
+                g++;
+            } else if (g + 1 < len && isEscape(buf[g + 1])) {
+                if (buf[g + 1] == 's') {
+                    badBefore = true;
+                } else if (buf[g + 1] == '"' && badBefore) {
+                    end3 = g + 2;
+                    badBefore = false;
+                }
+                g += 2;
+            } else {
+                break;
+            }
+        }
+        boolean badAtG = g + 1 < len && buf[g] == '\\' &&
+                         isBadEscape(buf[g + 1]);
+
+        int end1 = g < len && buf[g] == '"' ? g + 1 : -1;
+        int end2 = g;
+
+        if (badBefore) {
+            end3 = Math.max(end3, closingQuote(g));
+        }
+        if (badAtG) {
+            end3 = Math.max(end3, closingQuote(g + 2));
+        }
+
+        int end4 = g < len && buf[g] == '\\' ? g + 1 : g;
+        if (badAtG) {
+            int g2 = goodEnd(g + 2);
+            end4 = Math.max(end4, g2 < len && buf[g2] == '\\' ? g2 + 1 : g2);
+        }
+
+        int rule = 1;
+        int end = end1;
+        if (end2 > end) { rule = 2; end = end2; }
+        if (end3 > end) { rule = 3; end = end3; }
+        if (end4 > end) { rule = 4; end = end4; }
+
+        int line = lineNum;
+        pos = end;
+        countLines(start, end);
+        switch (rule) {
+        case 1: {
+            String strVal = new String(buf, start, end - start);
+            Symbol S = new StrLitTokenVal(sym.STRLITERAL, line, charNum, strVal);
+            charNum += end - start;
+            return S;
+        }
+        case 2:
+            ErrMsg.fatal(line, charNum, "unterminated string literal ignored");
+            return null;
+        case 3:
+            ErrMsg.fatal(line, charNum,
+                         "string literal with bad escaped character ignored");
+            charNum += end - start;
+            return null;
+        default:
+            ErrMsg.fatal(line, charNum,
+             "unterminated string literal with bad escaped character ignored");
+            return null;
+        }
+    }
+
+    // end of the longest (A|\E)* starting at i
+    private int goodEnd(int i) {
+        while (i < len) {
+            char c = buf[i];
+            if (c == '\n' || c == '"') {
+                break;
+            }
+            if (c != '\\') {
+                i++;
+            } else if (i + 1 < len && isEscape(buf[i + 1])) {
+                i += 2;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    // the end of [^\n"]*" starting at i, or -1 if there is none
+    private int closingQuote(int i) {
+        while (i < len && buf[i] != '\n' && buf[i] != '"') {
+            i++;
+        }
+        return i < len && buf[i] == '"' ? i + 1 : -1;
+    }
+
+    // counts the line breaks in buf[start..end), which holds no '\n'
+    private void countLines(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buf[i] == '\r') {
+                lineNum++;
+            }
+        }
+        lastWasCr = end > start && buf[end - 1] == '\r';
+    }
+
+    private static boolean isEscape(char c) {
+        return c == 'n' || c == 's' || c == 't' || c == '\'' || c == '"' ||
+               c == '\\';
+    }
+
+    private static boolean isBadEscape(char c) {
+        return c != '\n' && c != 'n' && c != 't' && c != '\'' && c != '"' &&
+               c != '?' && c != '\\';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private void readAll() throws IOException {
+        if (buf == null) {
+            buf = new char[1 << 14];
+        }
+        int n;
+        while ((n = in.read(buf, len, buf.length - len)) != -1) {
+            len += n;
+            if (len == buf.length) {
+                char[] bigger = new char[buf.length * 2];
+                System.arraycopy(buf, 0, bigger, 0, len);
+                buf = bigger;
+            }
+        }
+        in = null;
+    }
+}
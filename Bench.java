@@ -0,0 +1,309 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java_cup.runtime.*;
+
+/****
+ * Benchmark harness for the phases of the base front end.
+ *
+ * A synthetic program is built with GenBase and each phase is timed
+ * separately: scanning (Yylex), parsing, name analysis, unparsing, and the
+ * whole P4 pipeline.  Each phase is warmed up before it is measured; the
+ * average and best time per operation are reported, along with the bytes
+ * the measuring thread allocated per operation.
+ *
+ * Usage: java Bench [GenBase options] [-warmup N] [-iters N] [phase ...]
+ * Phases are scan, parse, name, unparse, unparsefile (unparse to a file
+ * the way P4 does) and pipeline; default is all.  The extra phases
+ * handscan (scan with BaseScanner), intlit and intlitold (convert every
+ * integer literal in the program with the scanner's literal parser, or
+ * with the Double/Integer parsing the scanner used before), newparser and
+ * reuseparser (scan and parse with a new parser each time, or with one
+ * ReusableParser; run with a small program, e.g. -funcs 1 -stmts 2, they
+ * show the per-file setup cost), and server and incremental (analyze
+ * and unparse the way P4Server does, from scratch or with an
+ * IncrementalAnalyzer, alternating between the program and a copy with
+ * one literal edited) are run only when named.
+ ****/
+
+public class Bench {
+    static int warmup = 10;
+    static int iters = 20;
+
+    public static void main(String[] args) throws Exception {
+        GenBase gen = new GenBase();
+        List<String> phases = new ArrayList<String>();
+        int i = 0;
+        while (i < args.length) {
+            int next = gen.parseOptions(args, i);
+            if (next != i) {
+                i = next;
+            } else if (args[i].equals("-warmup") && i + 1 < args.length) {
+                warmup = Integer.parseInt(args[i + 1]);
+                i += 2;
+            } else if (args[i].equals("-iters") && i + 1 < args.length) {
+                iters = Integer.parseInt(args[i + 1]);
+                i += 2;
+            } else {
+                phases.add(args[i++]);
+            }
+        }
+        if (phases.isEmpty()) {
+            phases.addAll(Arrays.asList("scan", "parse", "name", "unparse",
+                                        "unparsefile", "pipeline"));
+        }
+
+        String src = gen.generate();
+        System.out.println("program: " + src.length() + " chars, " +
+                           lines(src) + " lines");
+        System.out.printf("%-12s %12s %12s %10s %12s%n",
+                          "phase", "avg ms/op", "min ms/op", "MB/s", "KB/op");
+        for (String phase : phases) {
+            Phase p = phase(phase);
+            if (p == null) {
+                System.err.println("unknown phase " + phase);
+                System.exit(-1);
+            }
+            run(phase, p, src);
+        }
+    }
+
+    /**
+     * One benchmarked operation.  setup() runs outside the timed region and
+     * returns the input for op().
+     */
+    interface Phase {
+        Object setup(String src) throws Exception;
+        void op(Object in) throws Exception;
+    }
+
+    static Phase phase(String name) {
+        if (name.equals("scan")) {
+            return new Phase() {
+                public Object setup(String src) {
+                    return new Yylex(new StringReader(src));
+                }
+                public void op(Object in) throws Exception {
+                    Yylex lex = (Yylex) in;
+                    while (lex.next_token().sym != sym.EOF) {
+                    }
+                }
+            };
+        } else if (name.equals("handscan")) {
+            return new Phase() {
+                public Object setup(String src) {
+                    return new BaseScanner(new StringReader(src));
+                }
+                public void op(Object in) throws Exception {
+                    BaseScanner s = (BaseScanner) in;
+                    while (s.next_token().sym != sym.EOF) {
+                    }
+                }
+            };
+        } else if (name.equals("intlit") || name.equals("intlitold")) {
+            final boolean old = name.equals("intlitold");
+            return new Phase() {
+                public Object setup(String src) {
+                    return src.toCharArray();
+                }
+                public void op(Object in) {
+                    char[] buf = (char[]) in;
+                    long sum = 0;
+                    int i = 0;
+                    while (i < buf.length) {
+                        if (!Character.isDigit(buf[i])) {
+                            i++;
+                            continue;
+                        }
+                        int start = i;
+                        while (i < buf.length && Character.isDigit(buf[i])) {
+                            i++;
+                        }
+                        // identifiers such as v12 contain digits too
+                        if (start > 0 && Character.isLetterOrDigit(buf[start - 1])) {
+                            continue;
+                        }
+                        sum += old ? oldIntLiteral(buf, start, i - start)
+                                   : Yylex.intLiteral(buf, start, i - start);
+                    }
+                    sink += sum;
+                }
+            };
+        } else if (name.equals("newparser") ||
+                   name.equals("reuseparser")) {
+            final ReusableParser reused =
+                name.equals("reuseparser") ? new ReusableParser() : null;
+            return new Phase() {
+                public Object setup(String src) {
+                    return src;
+                }
+                public void op(Object in) throws Exception {
+                    java_cup.runtime.Scanner s =
+                        new Yylex(new StringReader((String) in));
+                    if (reused == null) {
+                        new parser(s).parse();
+                    } else {
+                        reused.reset(s, true);
+                        reused.parse();
+                    }
+                }
+            };
+        } else if (name.equals("parse")) {
+            return new Phase() {
+                public Object setup(String src) {
+                    return src;
+                }
+                public void op(Object in) throws Exception {
+                    P4.parse(new StringReader((String) in));
+                }
+            };
+        } else if (name.equals("name")) {
+            return new Phase() {
+                public Object setup(String src) throws Exception {
+                    return P4.parse(new StringReader(src));
+                }
+                public void op(Object in) {
+                    ((ProgramNode) in).nameAnalysis(new SymTable());
+                }
+            };
+        } else if (name.equals("unparse")) {
+            return new Phase() {
+                public Object setup(String src) throws Exception {
+                    return analyzed(src);
+                }
+                public void op(Object in) {
+                    PrintWriter out = new PrintWriter(Writer.nullWriter());
+                    ((ProgramNode) in).unparse(out, 0);
+                    out.flush();
+                }
+            };
+        } else if (name.equals("unparsefile")) {
+            return new Phase() {
+                public Object setup(String src) throws Exception {
+                    return analyzed(src);
+                }
+                public void op(Object in) throws Exception {
+                    PrintWriter out = P4.openOutput(scratchFile());
+                    ((ProgramNode) in).unparse(out, 0);
+                    out.close();
+                }
+            };
+        } else if (name.equals("server") || name.equals("incremental")) {
+            final boolean incremental = name.equals("incremental");
+            return new Phase() {
+                IncrementalAnalyzer analyzer = new IncrementalAnalyzer();
+                String[] versions;
+                int next = 0;
+                public Object setup(String src) {
+                    versions = new String[] { src, edited(src) };
+                    analyzer.analyze(src);
+                    return versions;
+                }
+                public void op(Object in) {
+                    String src = versions[next++ % 2];
+                    P4Server.Result r = incremental ? analyzer.analyze(src)
+                                                    : P4Server.analyze(src);
+                    sink += r.output.length();
+                }
+            };
+        } else if (name.equals("pipeline")) {
+            return new Phase() {
+                public Object setup(String src) {
+                    return src;
+                }
+                public void op(Object in) throws Exception {
+                    PrintWriter out = new PrintWriter(Writer.nullWriter());
+                    ProgramNode root = P4.parse(new StringReader((String) in));
+                    P4.analyze(root, new SymTable(), out);
+                    out.flush();
+                }
+            };
+        }
+        return null;
+    }
+
+    static long sink;   // keeps results of otherwise unused work alive
+
+    // src with the first integer literal past the middle changed, the way
+    // an edit between two saves changes one declaration
+    static String edited(String src) {
+        int i = src.length() / 2;
+        while (i < src.length() && !Character.isDigit(src.charAt(i))) {
+            i++;
+        }
+        return src.substring(0, i) + "1" + src.substring(i);
+    }
+
+    // the INTLITERAL rule as it was: build a String and parse it twice
+    static int oldIntLiteral(char[] buf, int start, int len) {
+        String text = new String(buf, start, len);
+        double val = Double.parseDouble(text);
+        if (val > Integer.MAX_VALUE) {
+            return -1;
+        }
+        return Integer.parseInt(text);
+    }
+
+    static void run(String name, Phase p, String src) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            p.op(p.setup(src));
+        }
+        long total = 0;
+        long best = Long.MAX_VALUE;
+        long allocated = 0;
+        for (int i = 0; i < iters; i++) {
+            Object in = p.setup(src);
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            p.op(in);
+            long t = System.nanoTime() - start;
+            allocated += allocatedBytes() - bytes;
+            total += t;
+            best = Math.min(best, t);
+        }
+        double avg = total / 1e6 / iters;
+        System.out.printf("%-12s %12.3f %12.3f %10.1f %12.1f%n", name, avg,
+                          best / 1e6, src.length() / 1e6 / (avg / 1e3),
+                          allocated / 1024.0 / iters);
+    }
+
+    // the bytes this thread has allocated so far
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    private static String analyzedSrc;
+    private static ProgramNode analyzedRoot;
+
+    // the name-analyzed AST of src; unparse doesn't change the AST, so the
+    // unparse phases share one
+    static ProgramNode analyzed(String src) throws Exception {
+        if (analyzedSrc != src) {
+            analyzedRoot = P4.parse(new StringReader(src));
+            analyzedRoot.nameAnalysis(new SymTable());
+            analyzedSrc = src;
+        }
+        return analyzedRoot;
+    }
+
+    private static String scratch;
+
+    // a temporary file for phases that write their output
+    static String scratchFile() throws IOException {
+        if (scratch == null) {
+            File f = File.createTempFile("bench", ".out");
+            f.deleteOnExit();
+            scratch = f.getPath();
+        }
+        return scratch;
+    }
+
+    static int lines(String src) {
+        int n = 0;
+        for (int i = 0; i < src.length(); i++) {
+            if (src.charAt(i) == '\n') n++;
+        }
+        return n;
+    }
+}
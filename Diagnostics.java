@@ -0,0 +1,158 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Diagnostics
+ *
+ * Collects the error and warning messages reported for one file, in the
+ * order they were reported, instead of printing them right away.  A
+ * collector is installed for the current thread with ErrMsg.collectInto.
+ *
+ * The messages are written out together, in one buffered write, by print
+ * or flush.  They can be sorted by position first, and the number written
+ * can be capped; by default they come out in reporting order, in the
+ * same "line:col ****ERROR**** msg" format ErrMsg prints.
+ */
+class Diagnostics {
+    static final int ERROR = 0;
+    static final int WARNING = 1;
+
+    private List<Record> records = new ArrayList<Record>();
+    private int errors = 0;
+    private int warnings = 0;
+    private PrintStream sink;        // where flush writes; may be null
+    private boolean sorted = false;  // sort by position before writing
+    private int limit = -1;          // most messages to write; -1 for all
+
+    Diagnostics() {
+        this(null);
+    }
+
+    /**
+     * Creates a collector whose flush writes to sink.
+     */
+    Diagnostics(PrintStream sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * If sorted is true, messages are written in order of position rather
+     * than in the order they were reported.
+     */
+    void setSorted(boolean sorted) {
+        this.sorted = sorted;
+    }
+
+    /**
+     * Writes at most limit messages (-1 for no limit); the rest are
+     * summarized in one line.  The counts still include every message.
+     */
+    void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Records one message.
+     * @param severity ERROR or WARNING
+     */
+    void add(int severity, int lineNum, int charNum, String msg) {
+        records.add(new Record(severity, lineNum, charNum, msg));
+        if (severity == ERROR) {
+            errors++;
+        } else {
+            warnings++;
+        }
+    }
+
+    int errors() {
+        return errors;
+    }
+
+    int warnings() {
+        return warnings;
+    }
+
+    List<Record> records() {
+        return records;
+    }
+
+    /**
+     * Writes the messages to out in the ErrMsg format.
+     */
+    void print(PrintStream out) {
+        if (records.isEmpty()) {
+            return;
+        }
+        List<Record> list = records;
+        if (sorted) {
+            list = new ArrayList<Record>(records);
+            Collections.sort(list, BY_POSITION);   // stable
+        }
+        int n = list.size();
+        if (limit >= 0 && limit < n) {
+            n = limit;
+        }
+        StringBuilder sb = new StringBuilder(n * 48);
+        String nl = System.lineSeparator();
+        for (int i = 0; i < n; i++) {
+            list.get(i).appendTo(sb);
+            sb.append(nl);
+        }
+        if (n < list.size()) {
+            sb.append("... ").append(list.size() - n)
+              .append(" more messages not shown").append(nl);
+        }
+        out.print(sb);
+        out.flush();
+    }
+
+    /**
+     * Writes the messages collected so far to the sink given to the
+     * constructor, if any, and forgets them.  The counts are kept.
+     */
+    void flush() {
+        if (sink != null) {
+            print(sink);
+        }
+        records.clear();
+    }
+
+    // the end-of-file position 0:0 sorts after everything else
+    private static final Comparator<Record> BY_POSITION =
+        new Comparator<Record>() {
+            public int compare(Record a, Record b) {
+                int la = a.lineNum == 0 ? Integer.MAX_VALUE : a.lineNum;
+                int lb = b.lineNum == 0 ? Integer.MAX_VALUE : b.lineNum;
+                if (la != lb) {
+                    return la < lb ? -1 : 1;
+                }
+                return Integer.compare(a.charNum, b.charNum);
+            }
+        };
+
+    static class Record {
+        final int severity;
+        final int lineNum;
+        final int charNum;
+        final String msg;
+
+        Record(int severity, int lineNum, int charNum, String msg) {
+            this.severity = severity;
+            this.lineNum = lineNum;
+            this.charNum = charNum;
+            this.msg = msg;
+        }
+
+        void appendTo(StringBuilder sb) {
+            sb.append(lineNum).append(':').append(charNum)
+              .append(severity == ERROR ? " ****ERROR**** " : " ****WARNING**** ")
+              .append(msg);
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            appendTo(sb);
+            return sb.toString();
+        }
+    }
+}
@@ -2,9 +2,57 @@
  * ErrMsg
  *
  * This class is used to generate warning and fatal error messages.
+ *
+ * Messages are printed to System.err, unless a Diagnostics collector has
+ * been installed for the current thread with collectInto; then they are
+ * recorded there and the static flag is left alone, so that several
+ * files can be analyzed at once on different threads.
  */
 class ErrMsg {
+   private static final ThreadLocal<Diagnostics> collector =
+       new ThreadLocal<Diagnostics>();
+
    static boolean flag = false;
+
+   /**
+     * Sends the messages reported on this thread to d, or back to
+     * System.err if d is null.
+     */
+    static void collectInto(Diagnostics d) {
+        if (d == null) {
+            collector.remove();
+        } else {
+            collector.set(d);
+        }
+    }
+
+   /**
+     * Returns the collector installed for the current thread, or null if
+     * messages are printed.
+     */
+    static Diagnostics collector() {
+        return collector.get();
+    }
+
+   /**
+     * Flushes this thread's collector, if it has one; see
+     * Diagnostics.flush.  Must be called before exiting on an error.
+     */
+    static void flush() {
+        Diagnostics d = collector.get();
+        if (d != null) {
+            d.flush();
+        }
+    }
+
+   /**
+     * Returns true if a fatal error has been reported, on this thread's
+     * collector if it has one.
+     */
+    static boolean hasErrors() {
+        Diagnostics d = collector.get();
+        return d == null ? flag : d.errors() > 0;
+    }
 	 
    /**
      * Generates a fatal error message.
@@ -13,6 +61,11 @@ class ErrMsg {
      * @param msg associated message for error
      */
     static void fatal(int lineNum, int charNum, String msg) {
+        Diagnostics d = collector.get();
+        if (d != null) {
+            d.add(Diagnostics.ERROR, lineNum, charNum, msg);
+            return;
+        }
         flag = true;
 		System.err.println(lineNum + ":" + charNum + " ****ERROR**** " + msg);
     }
@@ -24,6 +77,11 @@ class ErrMsg {
      * @param msg associated message for warning
      */
     static void warn(int lineNum, int charNum, String msg) {
+        Diagnostics d = collector.get();
+        if (d != null) {
+            d.add(Diagnostics.WARNING, lineNum, charNum, msg);
+            return;
+        }
         System.err.println(lineNum + ":" + charNum + " ****WARNING**** " + msg);
     }
 }
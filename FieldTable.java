@@ -0,0 +1,93 @@
+import java.util.*;
+
+// The fields of a tuple once they have all been declared: one scope that
+// can't change, kept as parallel arrays instead of a HashMap.  It has only
+// the read-only side of a SymTable, so nothing can be declared in it.  The names
+// and their Syms are in declaration order, which is also the order of the
+// tuple's layout; a lookup binary-searches the sorted hash codes of the
+// names, and order maps each of them back to its field.
+final class FieldTable implements SymLookup {
+	private final String[] names;
+	private final Sym[] syms;
+	private final int[] hashes;     // sorted
+	private final int[] order;      // the field of each hash
+
+	FieldTable(String[] names, Sym[] syms) {
+		this.names = names;
+		this.syms = syms;
+		int n = names.length;
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = (long)names[i].hashCode() << 32 | i;
+		Arrays.sort(keys);
+		hashes = new int[n];
+		order = new int[n];
+		for (int i = 0; i < n; i++) {
+			hashes[i] = (int)(keys[i] >> 32);
+			order[i] = (int)keys[i];
+		}
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public String name(int i) {
+		return names[i];
+	}
+
+	public Sym sym(int i) {
+		return syms[i];
+	}
+
+	// The index of the field called name, or -1.
+	public int indexOf(String name) {
+		int h = name.hashCode();
+		int lo = 0;
+		int hi = hashes.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (hashes[mid] < h)
+				lo = mid + 1;
+			else if (hashes[mid] > h)
+				hi = mid - 1;
+			else {
+				// names with equal hash codes are next to each other
+				while (mid > 0 && hashes[mid - 1] == h)
+					mid--;
+				for (; mid < hashes.length && hashes[mid] == h; mid++) {
+					if (names[order[mid]].equals(name))
+						return order[mid];
+				}
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	public Sym lookupLocal(String name) {
+		int i = indexOf(name);
+		return i < 0 ? null : syms[i];
+	}
+
+	public Sym lookupGlobal(String name) {
+		return lookupLocal(name);
+	}
+
+	// The fields, in declaration order.
+	public Map<String, Sym> localDecls() {
+		Map<String, Sym> symTab = new LinkedHashMap<String, Sym>();
+		for (int i = 0; i < names.length; i++)
+			symTab.put(names[i], syms[i]);
+		return Collections.unmodifiableMap(symTab);
+	}
+
+	public void print() {
+		System.out.print("\n++++ SYMBOL TABLE\n");
+		HashMap<String, Sym> symTab = new HashMap<String, Sym>();
+		for (int i = 0; i < names.length; i++)
+			symTab.put(names[i], syms[i]);
+		System.out.println(symTab.toString());
+		System.out.println("\n++++ END TABLE");
+	}
+}
@@ -0,0 +1,420 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * FlatAst
+ *
+ * An AST kept in a few parallel arrays instead of as a tree of ASTnode
+ * objects, for programs so large that the object headers, references and
+ * list cells of the tree cost several times the source on the heap.
+ *
+ * Nodes are numbered in preorder, the root being 0.  For node n, kind[n]
+ * is its AstWriter tag and end[n] is one past the last node of its
+ * subtree, so its first child, if any, is n + 1 and the sibling after a
+ * child c is end[c].  A node's children are those of the ASTnode, in the
+ * same order; a missing child (the expression of a plain return, the
+ * argument list of a CallExpNode that has none) is simply left out.
+ * value[n] holds the string of an identifier or string literal (as an
+ * index into strings), the value of an integer literal, and the size of
+ * a variable declaration.  Literals and identifiers have their position
+ * in lineNum and charNum, and identifiers their symbol in syms.
+ *
+ * A FlatAst is read from the binary form AstWriter writes, so a tree can
+ * be flattened (of) or loaded from a file without building ASTnodes (P4
+ * -astin, for a file written by -astout).
+ * FlatUnparser and FlatNameAnalyzer give the same results on it as
+ * unparse and nameAnalysis on the tree; both are Visitors.
+ */
+class FlatAst {
+    byte[] kind;
+    int[] end;
+    int[] value;
+    int[] lineNum;
+    int[] charNum;
+    Sym[] syms;
+    String[] strings;
+    int size = 0;
+    private int numStrings = 0;
+
+    // while reading: the index of each string
+    private HashMap<String, Integer> stringIndex;
+
+    // expected kinds of children that may be of several kinds
+    private static final int ANY_DECL = -1;
+    private static final int ANY_TYPE = -2;
+    private static final int ANY_STMT = -3;
+    private static final int ANY_EXP = -4;
+
+    private FlatAst(int capacity) {
+        kind = new byte[capacity];
+        end = new int[capacity];
+        value = new int[capacity];
+        lineNum = new int[capacity];
+        charNum = new int[capacity];
+        syms = new Sym[capacity];
+        strings = new String[16];
+    }
+
+    /**
+     * Returns the flat form of the tree rooted at root.
+     */
+    static FlatAst of(ProgramNode root) {
+        try {
+            return read(AstWriter.write(root));
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);  // AstWriter wrote it
+        }
+    }
+
+    /**
+     * Returns the tree whose binary form (see AstWriter) is buf.
+     */
+    static FlatAst read(byte[] buf) throws IOException {
+        // a node takes at least a byte, so this is enough for most trees
+        FlatAst ast = new FlatAst(Math.max(16, buf.length / 2));
+        AstReader in = new AstReader(buf, 0, buf.length);
+        ast.stringIndex = new HashMap<String, Integer>();
+        try {
+            in.header();
+            ast.node(in, AstWriter.PROGRAM);
+            in.finish();
+        } catch (IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new IOException("bad AST: " + ex, ex);
+        }
+        ast.stringIndex = null;
+        ast.trim();
+        return ast;
+    }
+
+    int kind(int n) {
+        return kind[n];
+    }
+
+    // n's first child, or -1 if it has none
+    int firstChild(int n) {
+        return n + 1 < end[n] ? n + 1 : -1;
+    }
+
+    // the child of parent after c, or -1 if c is the last
+    int nextSibling(int parent, int c) {
+        return end[c] < end[parent] ? end[c] : -1;
+    }
+
+    // the i'th child of n, or -1 if it has fewer
+    int child(int n, int i) {
+        int c = firstChild(n);
+        while (i-- > 0 && c >= 0) {
+            c = nextSibling(n, c);
+        }
+        return c;
+    }
+
+    String string(int n) {
+        return strings[value[n]];
+    }
+
+    /**
+     * Returns the bytes held by the arrays of this FlatAst, not counting
+     * the strings and symbols themselves.
+     */
+    long arrayBytes() {
+        // per node a byte (kind), four ints (end, value, lineNum, charNum)
+        // and a compressed reference (syms)
+        return (long) kind.length * (1 + 4 * 4 + 4) + 4L * strings.length;
+    }
+
+    // reads a node of the expected kind, or nothing if it is NULL and
+    // expected is NULL; returns its number or -1
+    private int node(AstReader in, int expected) throws IOException {
+        int tag = in.get();
+        if (tag == AstWriter.NULL) {
+            if (expected != AstWriter.NULL) {
+                throw new IOException("missing node");
+            }
+            return -1;
+        }
+        if (!fits(tag, expected)) {
+            throw new IOException("node " + tag + " where " + expected +
+                                  " belongs");
+        }
+        int n = add(tag);
+        switch (tag) {
+        case AstWriter.PROGRAM:
+            node(in, AstWriter.DECL_LIST);
+            break;
+        case AstWriter.DECL_LIST:
+            list(in, ANY_DECL);
+            break;
+        case AstWriter.STMT_LIST:
+            list(in, ANY_STMT);
+            break;
+        case AstWriter.EXP_LIST:
+            list(in, ANY_EXP);
+            break;
+        case AstWriter.FORMALS_LIST:
+            list(in, AstWriter.FORMAL_DECL);
+            break;
+        case AstWriter.FCTN_BODY:
+            node(in, AstWriter.DECL_LIST);
+            node(in, AstWriter.STMT_LIST);
+            break;
+        case AstWriter.VAR_DECL:
+            node(in, ANY_TYPE);
+            node(in, AstWriter.ID);
+            value[n] = in.signed();
+            break;
+        case AstWriter.FCTN_DECL:
+            node(in, ANY_TYPE);
+            node(in, AstWriter.ID);
+            node(in, AstWriter.FORMALS_LIST);
+            node(in, AstWriter.FCTN_BODY);
+            break;
+        case AstWriter.FORMAL_DECL:
+            node(in, ANY_TYPE);
+            node(in, AstWriter.ID);
+            break;
+        case AstWriter.TUPLE_DECL:
+            node(in, AstWriter.ID);
+            node(in, AstWriter.DECL_LIST);
+            break;
+        case AstWriter.LOGICAL:
+        case AstWriter.INTEGER:
+        case AstWriter.VOID:
+            break;
+        case AstWriter.TUPLE:
+            node(in, AstWriter.ID);
+            break;
+        case AstWriter.ASSIGN_STMT:
+            node(in, AstWriter.ASSIGN_EXP);
+            break;
+        case AstWriter.POST_INC_STMT:
+        case AstWriter.POST_DEC_STMT:
+        case AstWriter.READ_STMT:
+        case AstWriter.WRITE_STMT:
+        case AstWriter.NOT:
+        case AstWriter.UNARY_MINUS:
+            node(in, ANY_EXP);
+            break;
+        case AstWriter.IF_STMT:
+        case AstWriter.WHILE_STMT:
+            node(in, ANY_EXP);
+            node(in, AstWriter.DECL_LIST);
+            node(in, AstWriter.STMT_LIST);
+            break;
+        case AstWriter.IF_ELSE_STMT:
+            node(in, ANY_EXP);
+            node(in, AstWriter.DECL_LIST);
+            node(in, AstWriter.STMT_LIST);
+            node(in, AstWriter.DECL_LIST);
+            node(in, AstWriter.STMT_LIST);
+            break;
+        case AstWriter.CALL_STMT:
+            node(in, AstWriter.CALL_EXP);
+            break;
+        case AstWriter.RETURN_STMT:
+            if (in.get() != AstWriter.NULL) {
+                in.unget();
+                node(in, ANY_EXP);
+            }
+            break;
+        case AstWriter.TRUE:
+        case AstWriter.FALSE:
+            lineNum[n] = in.line();
+            charNum[n] = in.varint();
+            break;
+        case AstWriter.ID:
+            lineNum[n] = in.line();
+            charNum[n] = in.varint();
+            value[n] = intern(in.string());
+            syms[n] = in.sym();
+            break;
+        case AstWriter.INT_LIT:
+            lineNum[n] = in.line();
+            charNum[n] = in.varint();
+            value[n] = in.signed();
+            break;
+        case AstWriter.STR_LIT:
+            lineNum[n] = in.line();
+            charNum[n] = in.varint();
+            value[n] = intern(in.string());
+            break;
+        case AstWriter.TUPLE_ACCESS:
+            node(in, ANY_EXP);
+            node(in, AstWriter.ID);
+            break;
+        case AstWriter.ASSIGN_EXP:
+            node(in, ANY_EXP);
+            node(in, ANY_EXP);
+            break;
+        case AstWriter.CALL_EXP:
+            node(in, AstWriter.ID);
+            if (in.get() != AstWriter.NULL) {
+                in.unget();
+                node(in, AstWriter.EXP_LIST);
+            }
+            break;
+        default:        // the binary operators
+            node(in, ANY_EXP);
+            node(in, ANY_EXP);
+            break;
+        }
+        end[n] = size;
+        return n;
+    }
+
+    private void list(AstReader in, int expected) throws IOException {
+        int n = in.varint();
+        if (n < 0) {
+            throw new IOException("bad list length " + n);
+        }
+        for (int i = 0; i < n; i++) {
+            node(in, expected);
+        }
+    }
+
+    // whether a node of kind tag can be where one of expected belongs;
+    // the tags of each kind of DeclNode, TypeNode, StmtNode and ExpNode
+    // are consecutive
+    private static boolean fits(int tag, int expected) {
+        switch (expected) {
+        case ANY_DECL:
+            return tag >= AstWriter.VAR_DECL && tag <= AstWriter.TUPLE_DECL;
+        case ANY_TYPE:
+            return tag >= AstWriter.LOGICAL && tag <= AstWriter.TUPLE;
+        case ANY_STMT:
+            return tag >= AstWriter.ASSIGN_STMT && tag <= AstWriter.RETURN_STMT;
+        case ANY_EXP:
+            return tag >= AstWriter.TRUE && tag <= AstWriter.OR;
+        default:
+            return tag == expected;
+        }
+    }
+
+    private int add(int tag) {
+        if (size == kind.length) {
+            int capacity = size * 2;
+            kind = Arrays.copyOf(kind, capacity);
+            end = Arrays.copyOf(end, capacity);
+            value = Arrays.copyOf(value, capacity);
+            lineNum = Arrays.copyOf(lineNum, capacity);
+            charNum = Arrays.copyOf(charNum, capacity);
+            syms = Arrays.copyOf(syms, capacity);
+        }
+        kind[size] = (byte) tag;
+        return size++;
+    }
+
+    private int intern(String s) {
+        Integer i = stringIndex.get(s);
+        if (i != null) {
+            return i;
+        }
+        if (numStrings == strings.length) {
+            strings = Arrays.copyOf(strings, numStrings * 2);
+        }
+        strings[numStrings] = s;
+        stringIndex.put(s, numStrings);
+        return numStrings++;
+    }
+
+    private void trim() {
+        kind = Arrays.copyOf(kind, size);
+        end = Arrays.copyOf(end, size);
+        value = Arrays.copyOf(value, size);
+        lineNum = Arrays.copyOf(lineNum, size);
+        charNum = Arrays.copyOf(charNum, size);
+        syms = Arrays.copyOf(syms, size);
+        strings = Arrays.copyOf(strings, numStrings);
+    }
+
+    /**
+     * Walks a FlatAst.  visit(n) calls the visit method for the kind of
+     * node n; unless overridden, each of those visits n's children in
+     * order.  The literals (True, False, integer and string) share
+     * visitLiteral, the types without children visitType, and the unary
+     * and binary operators visitUnary and visitBinary.
+     */
+    abstract static class Visitor {
+        protected final FlatAst ast;
+
+        Visitor(FlatAst ast) {
+            this.ast = ast;
+        }
+
+        void visit(int n) {
+            switch (ast.kind[n]) {
+            case AstWriter.PROGRAM:       visitProgram(n); break;
+            case AstWriter.DECL_LIST:     visitDeclList(n); break;
+            case AstWriter.STMT_LIST:     visitStmtList(n); break;
+            case AstWriter.EXP_LIST:      visitExpList(n); break;
+            case AstWriter.FORMALS_LIST:  visitFormalsList(n); break;
+            case AstWriter.FCTN_BODY:     visitFctnBody(n); break;
+            case AstWriter.VAR_DECL:      visitVarDecl(n); break;
+            case AstWriter.FCTN_DECL:     visitFctnDecl(n); break;
+            case AstWriter.FORMAL_DECL:   visitFormalDecl(n); break;
+            case AstWriter.TUPLE_DECL:    visitTupleDecl(n); break;
+            case AstWriter.LOGICAL:
+            case AstWriter.INTEGER:
+            case AstWriter.VOID:          visitType(n); break;
+            case AstWriter.TUPLE:         visitTuple(n); break;
+            case AstWriter.ASSIGN_STMT:   visitAssignStmt(n); break;
+            case AstWriter.POST_INC_STMT: visitPostIncStmt(n); break;
+            case AstWriter.POST_DEC_STMT: visitPostDecStmt(n); break;
+            case AstWriter.IF_STMT:       visitIfStmt(n); break;
+            case AstWriter.IF_ELSE_STMT:  visitIfElseStmt(n); break;
+            case AstWriter.WHILE_STMT:    visitWhileStmt(n); break;
+            case AstWriter.READ_STMT:     visitReadStmt(n); break;
+            case AstWriter.WRITE_STMT:    visitWriteStmt(n); break;
+            case AstWriter.CALL_STMT:     visitCallStmt(n); break;
+            case AstWriter.RETURN_STMT:   visitReturnStmt(n); break;
+            case AstWriter.TRUE:
+            case AstWriter.FALSE:
+            case AstWriter.INT_LIT:
+            case AstWriter.STR_LIT:       visitLiteral(n); break;
+            case AstWriter.ID:            visitId(n); break;
+            case AstWriter.TUPLE_ACCESS:  visitTupleAccess(n); break;
+            case AstWriter.ASSIGN_EXP:    visitAssignExp(n); break;
+            case AstWriter.CALL_EXP:      visitCallExp(n); break;
+            case AstWriter.NOT:
+            case AstWriter.UNARY_MINUS:   visitUnary(n); break;
+            default:                      visitBinary(n); break;
+            }
+        }
+
+        void visitChildren(int n) {
+            for (int c = ast.firstChild(n); c >= 0; c = ast.nextSibling(n, c)) {
+                visit(c);
+            }
+        }
+
+        void visitProgram(int n)      { visitChildren(n); }
+        void visitDeclList(int n)     { visitChildren(n); }
+        void visitStmtList(int n)     { visitChildren(n); }
+        void visitExpList(int n)      { visitChildren(n); }
+        void visitFormalsList(int n)  { visitChildren(n); }
+        void visitFctnBody(int n)     { visitChildren(n); }
+        void visitVarDecl(int n)      { visitChildren(n); }
+        void visitFctnDecl(int n)     { visitChildren(n); }
+        void visitFormalDecl(int n)   { visitChildren(n); }
+        void visitTupleDecl(int n)    { visitChildren(n); }
+        void visitType(int n)         { visitChildren(n); }
+        void visitTuple(int n)        { visitChildren(n); }
+        void visitAssignStmt(int n)   { visitChildren(n); }
+        void visitPostIncStmt(int n)  { visitChildren(n); }
+        void visitPostDecStmt(int n)  { visitChildren(n); }
+        void visitIfStmt(int n)       { visitChildren(n); }
+        void visitIfElseStmt(int n)   { visitChildren(n); }
+        void visitWhileStmt(int n)    { visitChildren(n); }
+        void visitReadStmt(int n)     { visitChildren(n); }
+        void visitWriteStmt(int n)    { visitChildren(n); }
+        void visitCallStmt(int n)     { visitChildren(n); }
+        void visitReturnStmt(int n)   { visitChildren(n); }
+        void visitLiteral(int n)      { visitChildren(n); }
+        void visitId(int n)           { visitChildren(n); }
+        void visitTupleAccess(int n)  { visitChildren(n); }
+        void visitAssignExp(int n)    { visitChildren(n); }
+        void visitCallExp(int n)      { visitChildren(n); }
+        void visitUnary(int n)        { visitChildren(n); }
+        void visitBinary(int n)       { visitChildren(n); }
+    }
+}
@@ -0,0 +1,229 @@
+import java.io.*;
+import java.lang.ref.Reference;
+import java.util.*;
+import java.util.regex.*;
+
+/****
+ * Check of FlatAst against the tree of ASTnodes it is built from.
+ *
+ * Each program is parsed, then name-analyzed and unparsed both as a tree
+ * (nameAnalysis and unparse) and as a FlatAst (FlatNameAnalyzer and
+ * FlatUnparser); the two must report the same errors and, if there are
+ * none, write the same text.  The programs are the files named on the
+ * command line plus generated ones, each of which is also checked with
+ * some of its identifiers renamed, so that there are errors to report.
+ *
+ * For the last program (the largest generated one unless files were
+ * given) the heap taken by the tree, by a FlatAst flattened from it (as
+ * P4 -flat does) and by a FlatAst read straight from its binary form (as
+ * P4 -astin does) is measured, as the growth of the used heap after a
+ * collection, and printed with its ratio to the length of the source:
+ * the peak over the steps of parsing, flattening and analyzing, and what
+ * is retained at the end.
+ *
+ * Usage: java FlatCheck [-programs N] [-funcs N] [-seed N] [file ...]
+ *   -programs N   number of generated programs             (default 5)
+ *   -funcs N      functions in the largest of them         (default 500)
+ *   -seed N       seed for the programs and renamings      (default 1)
+ * Exits with status 1 if any check failed.
+ ****/
+
+public class FlatCheck {
+    private static final Pattern ID = Pattern.compile("\\b[a-z][a-zA-Z0-9_]*\\b");
+
+    public static void main(String[] args) throws Exception {
+        int programs = 5;
+        int funcs = 500;
+        long seed = 1;
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-programs") && i + 1 < args.length) {
+                programs = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-funcs") && i + 1 < args.length) {
+                funcs = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+
+        Random rand = new Random(seed);
+        int checked = 0;
+        int failed = 0;
+        String last = null;
+        for (String name : files) {
+            last = ScanCheck.read(name);
+            checked++;
+            if (!check(name, last)) {
+                failed++;
+            }
+        }
+        for (int i = 0; i < programs; i++) {
+            GenBase gen = new GenBase();
+            gen.seed = seed + i;
+            if (i == programs - 1) {
+                gen.funcs = funcs;
+            }
+            String src = gen.generate();
+            checked += 2;
+            if (!check("generated program " + i, src)) {
+                failed++;
+            }
+            if (!check("generated program " + i + " renamed",
+                       renamed(src, rand))) {
+                failed++;
+            }
+            if (files.isEmpty()) {
+                last = src;
+            }
+        }
+        System.out.println(checked + " programs, " + failed + " failed");
+        if (last != null) {
+            measure(last);
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    // src with about one identifier in fifty renamed to one that may not
+    // be declared, or may be declared twice
+    static String renamed(String src, Random rand) {
+        Matcher m = ID.matcher(src);
+        StringBuffer sb = new StringBuffer();
+        while (m.find()) {
+            String id = m.group();
+            if (!isKeyword(id) && rand.nextInt(50) == 0) {
+                id = "r" + rand.nextInt(20);
+            }
+            m.appendReplacement(sb, id);
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    private static boolean isKeyword(String id) {
+        switch (id) {
+        case "logical": case "integer": case "void": case "tuple":
+        case "if": case "else": case "while": case "read": case "write":
+        case "return":
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    static boolean check(String name, String src) {
+        ProgramNode root = ScanCheck.parse(src);
+        if (root == null) {
+            System.out.println(name + ": does not parse, skipped");
+            return true;
+        }
+        String tree = analyze(root, false);
+        String flat = analyze(root, true);
+        if (!tree.equals(flat)) {
+            System.out.println(name + ": FlatAst gives different results");
+            System.out.println("--- tree\n" + tree + "--- flat\n" + flat);
+            return false;
+        }
+        return true;
+    }
+
+    // the errors reported by analyzing root, as a tree or as a FlatAst,
+    // and its unparsed text if there were none
+    private static String analyze(ProgramNode root, boolean flat) {
+        boolean saved = P4.flatAst;
+        try {
+            P4.flatAst = flat;
+            return ScanCheck.analyze(root);
+        } finally {
+            P4.flatAst = saved;
+        }
+    }
+
+    // prints the heap taken by src analyzed as a tree, as a FlatAst
+    // flattened from the tree (P4 -flat) and as a FlatAst loaded from the
+    // tree's binary form (P4 -astin): the peak, which is the most live at
+    // the end of any step, and what is retained once it's been analyzed
+    static void measure(String src) throws Exception {
+        byte[] bytes = binary(src);
+        if (bytes == null) {
+            return;
+        }
+        System.out.println(src.length() + " chars, " + bytes.length +
+                           " bytes of AST:");
+
+        // parsed, then analyzed
+        long base = used();
+        ProgramNode root = ScanCheck.parse(src);
+        long peak = used() - base;
+        analyze(root, false);
+        long tree = used() - base;
+        report("tree", src.length(), Math.max(peak, tree), tree);
+        Reference.reachabilityFence(root);
+        root = null;
+
+        // parsed, written and read, and only then is the tree dropped
+        base = used();
+        root = ScanCheck.parse(src);
+        byte[] buf = AstWriter.write(root);
+        FlatAst ast = FlatAst.read(buf);
+        peak = used() - base;
+        Reference.reachabilityFence(root);
+        Reference.reachabilityFence(buf);
+        root = null;
+        buf = null;
+        analyzeFlat(ast);
+        long flat = used() - base;
+        report("-flat", src.length(), Math.max(peak, flat), flat);
+        ast = null;
+
+        // read from the bytes of a file, without a tree
+        base = used();
+        buf = bytes.clone();
+        ast = FlatAst.read(buf);
+        peak = used() - base;
+        Reference.reachabilityFence(buf);
+        buf = null;
+        analyzeFlat(ast);
+        flat = used() - base;
+        report("-astin", src.length(), Math.max(peak, flat), flat);
+        System.out.printf("  FlatAst arrays %d bytes, retained %.1fx less" +
+                          " than the tree%n", ast.arrayBytes(),
+                          (double) tree / flat);
+    }
+
+    private static void report(String how, int chars, long peak, long kept) {
+        System.out.printf("  %-7s peak %9d bytes (%5.1f per char)," +
+                          " retained %9d (%5.1f per char)%n", how,
+                          peak, (double) peak / chars,
+                          kept, (double) kept / chars);
+    }
+
+    private static void analyzeFlat(FlatAst ast) {
+        ErrMsg.collectInto(new Diagnostics());
+        try {
+            new FlatNameAnalyzer(ast, new SymTable()).analyze();
+        } finally {
+            ErrMsg.collectInto(null);
+        }
+    }
+
+    // the binary form of src, or null if it doesn't parse
+    private static byte[] binary(String src) {
+        ProgramNode root = ScanCheck.parse(src);
+        return root == null ? null : AstWriter.write(root);
+    }
+
+    // the used heap after a full collection
+    static long used() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+        }
+        return used;
+    }
+}
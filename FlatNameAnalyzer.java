@@ -0,0 +1,278 @@
+import java.util.*;
+
+/**
+ * FlatNameAnalyzer
+ *
+ * Name analysis of a FlatAst: declares what each declaration declares,
+ * resolves each use of a name to its symbol (kept in FlatAst.syms) and
+ * reports the same errors, in the same order, as nameAnalysis on the same
+ * tree of ASTnodes, down to its quirks: a function body's declarations
+ * are checked for duplicates among themselves rather than by the symbol
+ * table, an else block's statements are analyzed before its
+ * declarations, and a colon access reports errors at the position the
+ * access has reached.
+ */
+class FlatNameAnalyzer extends FlatAst.Visitor {
+    private SymTable symTable;
+
+    FlatNameAnalyzer(FlatAst ast, SymTable symTable) {
+        super(ast);
+        this.symTable = symTable;
+    }
+
+    void analyze() {
+        // a tree loaded from a file may come with symbols
+        Arrays.fill(ast.syms, null);
+        visit(0);
+    }
+
+    // the name in a type node, as TypeNode.toString gives it
+    private String typeName(int n) {
+        switch (ast.kind(n)) {
+        case AstWriter.LOGICAL: return "logical";
+        case AstWriter.INTEGER: return "integer";
+        case AstWriter.VOID:    return "void";
+        default:                return "tuple";
+        }
+    }
+
+    // the identifier a declaration declares
+    private int declId(int n) {
+        return ast.child(n, ast.kind(n) == AstWriter.TUPLE_DECL ? 0 : 1);
+    }
+
+    private void error(int id, String msg) {
+        ErrMsg.fatal(ast.lineNum[id], ast.charNum[id], msg);
+    }
+
+    private Sym lookupGlobal(SymLookup table, String name) {
+        try {
+            return table.lookupGlobal(name);
+        } catch (EmptySymTableException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // declares name in the current scope of table, reporting it at id if
+    // it already is
+    private void declare(SymTable table, int id, Sym sym) {
+        try {
+            if (table.tryAddDecl(ast.string(id), sym) != null) {
+                error(id, "Multiply-declared identifier");
+            }
+        } catch (EmptySymTableException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void addScope() {
+        symTable.addScope();
+    }
+
+    private void removeScope() {
+        try {
+            symTable.removeScope();
+        } catch (EmptySymTableException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    void visitVarDecl(int n) {
+        varDecl(n, symTable, symTable);
+    }
+
+    // a variable declaration; tuple types are looked up in table, and the
+    // variable is declared in scope (which is the tuple's own table for
+    // its fields)
+    private void varDecl(int n, SymTable table, SymTable scope) {
+        int type = ast.child(n, 0);
+        int id = ast.child(n, 1);
+        if (ast.kind(type) == AstWriter.VOID) {
+            error(id, "Non-function declared void");
+        } else if (ast.kind(type) == AstWriter.TUPLE) {
+            int tupleId = ast.child(type, 0);
+            String tupleName = ast.string(tupleId);
+            if (!(lookupGlobal(table, tupleName) instanceof TupleDefSym)) {
+                error(tupleId, "Invalid name of tuple type");
+            } else {
+                declare(scope, id, new TupleSym(tupleName, ast.string(id)));
+            }
+        } else {
+            declare(scope, id, new Sym(typeName(type)));
+        }
+    }
+
+    void visitFctnDecl(int n) {
+        LinkedList<String> params = new LinkedList<String>();
+        int formals = ast.child(n, 2);
+        for (int f = ast.firstChild(formals); f >= 0;
+             f = ast.nextSibling(formals, f)) {
+            params.add(typeName(ast.child(f, 0)));
+        }
+        declare(symTable, ast.child(n, 1),
+                new FnSym(typeName(ast.child(n, 0)), params));
+
+        // a new scope for parameters and function body
+        addScope();
+        visit(formals);
+        visit(ast.child(n, 3));
+        removeScope();
+    }
+
+    void visitFormalDecl(int n) {
+        int type = ast.child(n, 0);
+        int id = ast.child(n, 1);
+        if (ast.kind(type) == AstWriter.VOID) {
+            error(id, "Non-function declared void");
+            return;
+        }
+        declare(symTable, id, new Sym(typeName(type)));
+    }
+
+    void visitFctnBody(int n) {
+        // the declarations are checked for duplicates among themselves; one
+        // with the name of a parameter is not declared, and not reported
+        int decls = ast.child(n, 0);
+        HashMap<String, Integer> counter = new HashMap<String, Integer>();
+        for (int d = ast.firstChild(decls); d >= 0;
+             d = ast.nextSibling(decls, d)) {
+            int id = declId(d);
+            String key = ast.string(id);
+            Integer count = counter.get(key);
+            if (count == null) {
+                try {
+                    if (symTable.lookupLocal(key) == null) {
+                        visit(d);
+                    }
+                } catch (EmptySymTableException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                counter.put(key, 1);
+            } else {
+                counter.put(key, count + 1);
+                error(id, "Multiply-declared identifier");
+            }
+        }
+        visit(ast.child(n, 1));
+    }
+
+    void visitTupleDecl(int n) {
+        SymTable fields = new SymTable();
+        int id = ast.child(n, 0);
+        TupleDefSym def = new TupleDefSym(ast.string(id), fields);
+        declare(symTable, id, def);
+
+        // the fields go in the tuple's own table
+        int decls = ast.child(n, 1);
+        List<String> names = new ArrayList<String>();
+        for (int d = ast.firstChild(decls); d >= 0;
+             d = ast.nextSibling(decls, d)) {
+            if (ast.value[d] == VarDeclNode.NON_TUPLE) {
+                varDecl(d, fields, fields);
+            } else {
+                varDecl(d, symTable, fields);
+            }
+            names.add(ast.string(declId(d)));
+        }
+        def.layOut(names, symTable);
+    }
+
+    void visitIfStmt(int n) {
+        visit(ast.child(n, 0));
+        addScope();
+        visit(ast.child(n, 1));
+        visit(ast.child(n, 2));
+        removeScope();
+    }
+
+    void visitWhileStmt(int n) {
+        visitIfStmt(n);
+    }
+
+    void visitIfElseStmt(int n) {
+        visit(ast.child(n, 0));
+        addScope();
+        visit(ast.child(n, 1));
+        visit(ast.child(n, 2));
+        removeScope();
+
+        // the else block's statements come before its declarations
+        addScope();
+        visit(ast.child(n, 4));
+        visit(ast.child(n, 3));
+        removeScope();
+    }
+
+    void visitLiteral(int n) {
+    }
+
+    void visitType(int n) {
+    }
+
+    void visitId(int n) {
+        resolve(n, symTable);
+    }
+
+    // looks id up in table, reporting it if it isn't there
+    private Sym resolve(int id, SymLookup table) {
+        Sym sym = lookupGlobal(table, ast.string(id));
+        ast.syms[id] = sym;
+        if (sym == null) {
+            error(id, "Undeclared identifier");
+        }
+        return sym;
+    }
+
+    void visitTupleAccess(int n) {
+        // the whole chain a:b:c is analyzed from its leftmost name
+        List<Integer> fields = new ArrayList<Integer>();
+        int base = n;
+        while (ast.kind(base) == AstWriter.TUPLE_ACCESS) {
+            fields.add(0, ast.child(base, 1));
+            base = ast.child(base, 0);
+        }
+        if (ast.kind(base) != AstWriter.ID) {
+            visitChildren(n);       // not from the parser
+            return;
+        }
+
+        String baseName = ast.string(base);
+        Sym sym = lookupGlobal(symTable, baseName);
+        int lineNum = ast.lineNum[base];
+        int charNum = ast.charNum[base];
+        if (sym == null) {
+            ErrMsg.fatal(lineNum, charNum, "Undeclared identifier");
+            return;
+        } else if (!(sym instanceof TupleSym)) {
+            ErrMsg.fatal(lineNum, charNum, "Colon-access of non-tuple type");
+            return;
+        }
+        resolve(base, symTable);
+        String tupleName = sym.toString();
+        charNum += baseName.length() + 1;
+        for (int field : fields) {
+            Sym def = lookupGlobal(symTable, tupleName);
+            tupleName = null;
+            if (def == null) {
+                ErrMsg.fatal(lineNum, charNum, "Undeclared identifier");
+            } else if (!(def instanceof TupleDefSym)) {
+                ErrMsg.fatal(lineNum, charNum, "Invalid name of tuple type");
+            } else {
+                SymLookup table = ((TupleDefSym) def).getSymTable();
+                Sym fieldSym = lookupGlobal(table, ast.string(field));
+                if (fieldSym == null) {
+                    error(field, "Invalid tuple field name");
+                } else {
+                    resolve(field, table);
+                    if (fieldSym instanceof TupleSym) {
+                        tupleName = fieldSym.toString();
+                    }
+                }
+            }
+            charNum += ast.string(field).length() + 1;
+            if (tupleName == null) {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * FlatUnparser
+ *
+ * Unparses a FlatAst, writing exactly what unparse writes for the same
+ * tree of ASTnodes: identifiers that name analysis resolved are followed
+ * by their symbol in angle brackets.
+ */
+class FlatUnparser extends FlatAst.Visitor {
+    private PrintWriter p;
+    private int indent = 0;
+
+    FlatUnparser(FlatAst ast, PrintWriter p) {
+        super(ast);
+        this.p = p;
+    }
+
+    void unparse() {
+        visit(0);
+    }
+
+    // unparses n at the given indentation
+    private void unparse(int n, int indent) {
+        int saved = this.indent;
+        this.indent = indent;
+        visit(n);
+        this.indent = saved;
+    }
+
+    private void child(int n, int i, int indent) {
+        unparse(ast.child(n, i), indent);
+    }
+
+    private void doIndent() {
+        int n = indent;
+        while (n > SPACES.length) {
+            p.write(SPACES, 0, SPACES.length);
+            n -= SPACES.length;
+        }
+        if (n > 0) p.write(SPACES, 0, n);
+    }
+
+    private static final char[] SPACES = new char[256];
+    static {
+        Arrays.fill(SPACES, ' ');
+    }
+
+    // the elements of a list, separated by ", "
+    private void commaList(int n) {
+        for (int c = ast.firstChild(n); c >= 0; c = ast.nextSibling(n, c)) {
+            if (c != n + 1) {
+                p.print(", ");
+            }
+            unparse(c, 0);
+        }
+    }
+
+    void visitExpList(int n) {
+        commaList(n);
+    }
+
+    void visitFormalsList(int n) {
+        commaList(n);
+    }
+
+    void visitVarDecl(int n) {
+        doIndent();
+        child(n, 0, 0);
+        p.print(" ");
+        child(n, 1, 0);
+        p.println(".");
+    }
+
+    void visitFctnDecl(int n) {
+        doIndent();
+        child(n, 0, 0);
+        p.print(" ");
+        child(n, 1, 0);
+        p.print("{");
+        child(n, 2, 0);
+        p.println("} [");
+        child(n, 3, indent + 4);
+        p.println("]\n");
+    }
+
+    void visitFormalDecl(int n) {
+        child(n, 0, 0);
+        p.print(" ");
+        child(n, 1, 0);
+    }
+
+    void visitTupleDecl(int n) {
+        doIndent();
+        p.print("tuple ");
+        child(n, 0, 0);
+        p.println(" {");
+        child(n, 1, indent + 4);
+        doIndent();
+        p.println("}.\n");
+    }
+
+    void visitType(int n) {
+        switch (ast.kind(n)) {
+        case AstWriter.LOGICAL: p.print("logical"); break;
+        case AstWriter.INTEGER: p.print("integer"); break;
+        default:                p.print("void"); break;
+        }
+    }
+
+    void visitTuple(int n) {
+        p.print("tuple ");
+        child(n, 0, 0);
+    }
+
+    void visitAssignStmt(int n) {
+        doIndent();
+        child(n, 0, -1);    // no parentheses
+        p.println(".");
+    }
+
+    void visitPostIncStmt(int n) {
+        doIndent();
+        child(n, 0, 0);
+        p.println("++.");
+    }
+
+    void visitPostDecStmt(int n) {
+        doIndent();
+        child(n, 0, 0);
+        p.println("--.");
+    }
+
+    void visitIfStmt(int n) {
+        block("if ", n);
+    }
+
+    void visitWhileStmt(int n) {
+        block("while ", n);
+    }
+
+    void visitIfElseStmt(int n) {
+        block("if ", n);
+        doIndent();
+        p.println("else [");
+        child(n, 3, indent + 4);
+        child(n, 4, indent + 4);
+        doIndent();
+        p.println("]");
+    }
+
+    // keyword, condition and the block of declarations and statements
+    // that follow it
+    private void block(String keyword, int n) {
+        doIndent();
+        p.print(keyword);
+        child(n, 0, 0);
+        p.println(" [");
+        child(n, 1, indent + 4);
+        child(n, 2, indent + 4);
+        doIndent();
+        p.println("]");
+    }
+
+    void visitReadStmt(int n) {
+        doIndent();
+        p.print("read >> ");
+        child(n, 0, 0);
+        p.println(".");
+    }
+
+    void visitWriteStmt(int n) {
+        doIndent();
+        p.print("write << ");
+        child(n, 0, 0);
+        p.println(".");
+    }
+
+    void visitCallStmt(int n) {
+        doIndent();
+        child(n, 0, indent);
+        p.println(".");
+    }
+
+    void visitReturnStmt(int n) {
+        doIndent();
+        p.print("return");
+        if (ast.firstChild(n) >= 0) {
+            p.print(" ");
+            child(n, 0, 0);
+        }
+        p.println(".");
+    }
+
+    void visitLiteral(int n) {
+        switch (ast.kind(n)) {
+        case AstWriter.TRUE:    p.print("True"); break;
+        case AstWriter.FALSE:   p.print("False"); break;
+        case AstWriter.INT_LIT: p.print(ast.value[n]); break;
+        default:                p.print(ast.string(n)); break;
+        }
+    }
+
+    void visitId(int n) {
+        p.print(ast.string(n));
+        Sym sym = ast.syms[n];
+        if (sym != null) {
+            p.print("<");
+            p.print(sym.toString());
+            p.print(">");
+        }
+    }
+
+    void visitTupleAccess(int n) {
+        child(n, 0, 0);
+        p.print(":");
+        child(n, 1, 0);
+    }
+
+    void visitAssignExp(int n) {
+        if (indent != -1) p.print("(");
+        child(n, 0, 0);
+        p.print(" = ");
+        child(n, 1, 0);
+        if (indent != -1) p.print(")");
+    }
+
+    void visitCallExp(int n) {
+        child(n, 0, 0);
+        p.print("(");
+        if (ast.child(n, 1) >= 0) {
+            child(n, 1, 0);
+        }
+        p.print(")");
+    }
+
+    void visitUnary(int n) {
+        p.print(ast.kind(n) == AstWriter.NOT ? "(~" : "(-");
+        child(n, 0, 0);
+        p.print(")");
+    }
+
+    void visitBinary(int n) {
+        p.print("(");
+        child(n, 0, 0);
+        p.print(operator(ast.kind(n)));
+        child(n, 1, 0);
+        p.print(")");
+    }
+
+    private static String operator(int kind) {
+        switch (kind) {
+        case AstWriter.PLUS:       return " + ";
+        case AstWriter.MINUS:      return " - ";
+        case AstWriter.TIMES:      return " * ";
+        case AstWriter.DIVIDE:     return " / ";
+        case AstWriter.EQUALS:     return " == ";
+        case AstWriter.NOT_EQUALS: return " ~= ";
+        case AstWriter.GREATER:    return " > ";
+        case AstWriter.GREATER_EQ: return " >= ";
+        case AstWriter.LESS:       return " < ";
+        case AstWriter.LESS_EQ:    return " <= ";
+        case AstWriter.AND:        return " & ";
+        default:                   return " | ";
+        }
+    }
+}
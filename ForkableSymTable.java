@@ -0,0 +1,65 @@
+import java.util.*;
+
+// A SymTable kept as a PersistentSymTable, so that name analysis can run
+// on it as on any SymTable while snapshot() hands out the table as it is
+// at that moment without copying anything.  A new ForkableSymTable can be
+// started from any snapshot, and goes its own way from there.
+public class ForkableSymTable extends SymTable {
+	private PersistentSymTable current;
+
+	public ForkableSymTable() {
+		this(PersistentSymTable.EMPTY);
+	}
+
+	public ForkableSymTable(PersistentSymTable snapshot) {
+		current = snapshot;
+	}
+
+	// The table as it is now; later changes don't affect it.
+	public PersistentSymTable snapshot() {
+		return current;
+	}
+
+	public Sym tryAddDecl(String name, Sym sym)
+	throws EmptySymTableException {
+		if (name == null || sym == null)		throw new IllegalArgumentException();
+
+		Sym old = current.lookupLocal(name);
+		if (old != null)
+			return old;
+		try {
+			current = current.addDecl(name, sym);
+		} catch (DuplicateSymNameException e) {
+			throw new IllegalStateException(e);
+		}
+		return null;
+	}
+
+	public void addScope() {
+		current = current.addScope();
+	}
+
+	public Sym lookupLocal(String name)
+	throws EmptySymTableException {
+		return current.lookupLocal(name);
+	}
+
+	public Sym lookupGlobal(String name)
+	throws EmptySymTableException {
+		return current.lookupGlobal(name);
+	}
+
+	public Map<String, Sym> localDecls()
+	throws EmptySymTableException {
+		return current.localDecls();
+	}
+
+	public void removeScope()
+	throws EmptySymTableException {
+		current = current.removeScope();
+	}
+
+	public void print() {
+		current.print();
+	}
+}
@@ -0,0 +1,222 @@
+import java.io.*;
+import java.util.*;
+
+/****
+ * Generator for synthetic base programs, used to drive the benchmarks.
+ *
+ * The generated program declares a chain of nested tuple types, a pool of
+ * global integer identifiers, one global variable of the outermost tuple
+ * type and a number of functions whose bodies nest if/while blocks.  Every
+ * name it uses is declared, so the program passes name analysis.
+ *
+ * Usage: java GenBase [options] [outfile]
+ *   -funcs N       number of functions                    (default 50)
+ *   -stmts N       statements per block                   (default 8)
+ *   -depth N       nesting depth of if/while blocks       (default 4)
+ *   -tuples N      nesting depth of tuple types           (default 3)
+ *   -ids N         number of global identifiers           (default 100)
+ *   -seed N        random seed                            (default 1)
+ * The program is written to stdout if no output file is given.
+ ****/
+
+public class GenBase {
+    int funcs = 50;
+    int stmts = 8;
+    int depth = 4;
+    int tuples = 3;
+    int ids = 100;
+    long seed = 1;
+
+    private StringBuilder out;
+    private Random rand;
+    private int curFunc;
+
+    public static void main(String[] args) throws IOException {
+        GenBase gen = new GenBase();
+        int argc = gen.parseOptions(args, 0);
+        if (argc < args.length - 1) {
+            System.err.println("usage: java GenBase [options] [outfile]");
+            System.exit(-1);
+        }
+        String prog = gen.generate();
+        if (argc == args.length) {
+            System.out.print(prog);
+        } else {
+            Writer w = new FileWriter(args[argc]);
+            w.write(prog);
+            w.close();
+        }
+    }
+
+    /**
+     * Reads generator options from args starting at index i.  Returns the
+     * index of the first argument that is not a generator option.
+     */
+    int parseOptions(String[] args, int i) {
+        while (i + 1 < args.length) {
+            int val;
+            try {
+                val = Integer.parseInt(args[i + 1]);
+            } catch (NumberFormatException ex) {
+                return i;
+            }
+            if (args[i].equals("-funcs"))        funcs = val;
+            else if (args[i].equals("-stmts"))   stmts = val;
+            else if (args[i].equals("-depth"))   depth = val;
+            else if (args[i].equals("-tuples"))  tuples = val;
+            else if (args[i].equals("-ids"))     ids = Math.max(1, val);
+            else if (args[i].equals("-seed"))    seed = val;
+            else return i;
+            i += 2;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the text of a program built from the current options.
+     */
+    String generate() {
+        out = new StringBuilder();
+        rand = new Random(seed);
+
+        // tuple types: T0 holds integers, Tk holds a Tk-1 and an integer
+        for (int t = 0; t < tuples; t++) {
+            out.append("tuple T").append(t).append(" {\n");
+            if (t > 0) {
+                out.append("    tuple T").append(t - 1).append(" in.\n");
+            }
+            out.append("    integer f0.\n");
+            out.append("    integer f1.\n");
+            out.append("}.\n\n");
+        }
+
+        for (int i = 0; i < ids; i++) {
+            out.append("integer v").append(i).append(".\n");
+        }
+        if (tuples > 0) {
+            out.append("tuple T").append(tuples - 1).append(" g.\n");
+        }
+        out.append("\n");
+
+        for (curFunc = 0; curFunc < funcs; curFunc++) {
+            out.append("integer fn").append(curFunc)
+               .append("{integer a, logical b} [\n");
+            out.append("    integer l0.\n");
+            out.append("    logical c.\n");
+            block(1, 1, 1);
+            out.append("    return a.\n");
+            out.append("]\n\n");
+        }
+        return out.toString();
+    }
+
+    // statements of a block at the given level, where locals l0 .. l(vis-1)
+    // are visible; one of them opens a nested block until the depth limit
+    // is reached
+    private void block(int level, int vis, int indent) {
+        int nested = depth >= level ? rand.nextInt(Math.max(1, stmts)) : -1;
+        for (int s = 0; s < stmts; s++) {
+            if (s == nested) {
+                nestedStmt(level, vis, indent);
+            } else {
+                simpleStmt(vis, indent);
+            }
+        }
+    }
+
+    private void nestedStmt(int level, int vis, int indent) {
+        int kind = rand.nextInt(3);
+        indent(indent);
+        out.append(kind == 1 ? "while " : "if ").append(exp(vis)).append(" [\n");
+        indent(indent + 1);
+        out.append("integer l").append(vis).append(".\n");
+        block(level + 1, vis + 1, indent + 1);
+        indent(indent);
+        out.append("]\n");
+        if (kind == 2) {
+            // IfElseStmtNode analyzes the else statements before the else
+            // declarations, so the else block declares nothing; it doesn't
+            // nest either, to keep the program size linear in the depth
+            indent(indent);
+            out.append("else [\n");
+            block(depth + 1, vis, indent + 1);
+            indent(indent);
+            out.append("]\n");
+        }
+    }
+
+    private void simpleStmt(int vis, int indent) {
+        indent(indent);
+        int kind = rand.nextInt(7);
+        if (kind == 4 && tuples == 0) {
+            kind = 5;   // no tuple to assign to, so a plain assignment
+        }
+        switch (kind) {
+        case 0:
+            out.append(var(vis)).append("++.\n");
+            break;
+        case 1:
+            out.append("write << ").append(exp(vis)).append(".\n");
+            break;
+        case 2:
+            out.append("read >> ").append(var(vis)).append(".\n");
+            break;
+        case 3:
+            out.append("fn").append(rand.nextInt(curFunc + 1))
+               .append("(").append(exp(vis)).append(", c).\n");
+            break;
+        case 4:
+            out.append(tupleAccess()).append(" = ").append(exp(vis))
+               .append(".\n");
+            break;
+        default:
+            out.append(var(vis)).append(" = ").append(exp(vis))
+               .append(".\n");
+            break;
+        }
+    }
+
+    private String exp(int vis) {
+        switch (rand.nextInt(5)) {
+        case 0:
+            return var(vis) + " + " + rand.nextInt(1000);
+        case 1:
+            return "(" + var(vis) + " * " + var(vis) + ") - a";
+        case 2:
+            return var(vis) + " == " + var(vis);
+        case 3:
+            return tuples > 0 ? tupleAccess() + " < " + var(vis)
+                              : "~b";
+        default:
+            return var(vis);
+        }
+    }
+
+    // a global identifier, a parameter or a visible local
+    private String var(int vis) {
+        int r = rand.nextInt(4);
+        if (r == 0) {
+            return "a";
+        } else if (r == 1) {
+            return "l" + rand.nextInt(vis);
+        }
+        return "v" + rand.nextInt(ids);
+    }
+
+    // g:in:in:...:f0 through a random number of tuple levels
+    private String tupleAccess() {
+        StringBuilder sb = new StringBuilder("g");
+        int hops = rand.nextInt(tuples);
+        for (int h = 0; h < hops; h++) {
+            sb.append(":in");
+        }
+        sb.append(rand.nextBoolean() ? ":f0" : ":f1");
+        return sb.toString();
+    }
+
+    private void indent(int indent) {
+        for (int i = 0; i < indent; i++) {
+            out.append("    ");
+        }
+    }
+}
@@ -0,0 +1,389 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * IncrementalAnalyzer
+ *
+ * Analyzes successive versions of one program, redoing only the top-level
+ * declarations that changed or that depend on a global name whose binding
+ * changed.
+ *
+ * The source is cut into chunks, one per top-level declaration, at each
+ * '.' or closing ']' outside brackets, strings and comments.  Each chunk
+ * is scanned and parsed on its own, with positions relative to its start,
+ * and name-analyzed against the global scope built by the chunks before
+ * it.  While a chunk is analyzed, the global names it looks up or
+ * declares are recorded along with what they were bound to.  The AST,
+ * those dependencies, the global symbols it declared and its messages are
+ * cached, keyed by the chunk's text.
+ *
+ * On the next version, a chunk whose text is in the cache is reused, AST
+ * and all, if every global name it depends on is still bound the same way
+ * (the same kind of symbol with the same type, or for a tuple type the
+ * same analysis of the same declaration); its symbols are put back in the
+ * global scope and its messages are moved to its new position.  Other
+ * chunks are parsed and analyzed again.
+ *
+ * The result is the same as analyzing the whole program (see
+ * P4Server.analyze).  A version with a syntax error or a scanning error
+ * is analyzed whole, since its chunks may not be declarations.
+ */
+class IncrementalAnalyzer {
+    // the chunks of the last version, by text
+    private HashMap<String, List<Chunk>> cache =
+        new HashMap<String, List<Chunk>>();
+    // tuple types are told apart by the analysis that declared them
+    private IdentityHashMap<Sym, Integer> tupleVersions =
+        new IdentityHashMap<Sym, Integer>();
+    private int nextTupleVersion = 0;
+
+    // how the last version was analyzed
+    int reused;          // chunks reused from the cache
+    int analyzed;        // chunks parsed and analyzed again
+    boolean whole;       // analyzed whole
+
+    /**
+     * Analyzes the next version of the program.
+     */
+    synchronized P4Server.Result analyze(String src) {
+        reused = 0;
+        analyzed = 0;
+        whole = false;
+        HashMap<String, List<Chunk>> next = new HashMap<String, List<Chunk>>();
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        RecordingSymTable global = new RecordingSymTable(tupleVersions);
+        NameTable names = new NameTable();
+        int[] pos = new int[] { 1, 1 };   // line and column of the chunk
+
+        for (int[] span : split(src)) {
+            String text = src.substring(span[0], span[1]);
+            int line = pos[0];
+            int col = pos[1];
+            advance(src, span[0], span[1], pos);
+
+            Chunk c = reusable(text, global);
+            if (c != null) {
+                reused++;
+                for (int i = 0; i < c.defNames.size(); i++) {
+                    global.declare(c.defNames.get(i), c.defSyms.get(i));
+                }
+            } else {
+                c = analyzeChunk(text, global, names);
+                if (c == null) {
+                    // not a list of declarations; analyze it all at once,
+                    // and keep the cache for the next version
+                    for (Chunk done : chunks) {
+                        done.used = false;
+                    }
+                    whole = true;
+                    return P4Server.analyze(src);
+                }
+                analyzed++;
+            }
+            c.line = line;
+            c.col = col;
+            c.used = true;
+            chunks.add(c);
+            List<Chunk> same = next.get(text);
+            if (same == null) {
+                same = new ArrayList<Chunk>(1);
+                next.put(text, same);
+            }
+            same.add(c);
+        }
+        IdentityHashMap<Sym, Integer> versions =
+            new IdentityHashMap<Sym, Integer>();
+        for (Chunk c : chunks) {
+            c.used = false;
+            for (Sym sym : c.defSyms) {
+                if (sym instanceof TupleDefSym) {
+                    versions.put(sym, tupleVersions.get(sym));
+                }
+            }
+        }
+        cache = next;
+        tupleVersions = versions;
+
+        // scanning messages come first, as the whole file is parsed before
+        // it is name-analyzed
+        Diagnostics d = P4.newDiagnostics(null);
+        for (Chunk c : chunks) {
+            c.addTo(d, c.scanMessages);
+        }
+        for (Chunk c : chunks) {
+            c.addTo(d, c.nameMessages);
+        }
+
+        P4Server.Result r = new P4Server.Result();
+        r.status = P4Server.OK;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        d.print(new PrintStream(bytes));
+        r.diagnostics = bytes.toString();
+        if (d.errors() == 0) {
+            List<DeclNode> decls = new ArrayList<DeclNode>();
+            for (Chunk c : chunks) {
+                decls.addAll(c.decls);
+            }
+            StringWriter text = new StringWriter();
+            PrintWriter out = new PrintWriter(text);
+            new ProgramNode(new DeclListNode(decls)).unparse(out, 0);
+            out.flush();
+            r.output = text.toString();
+        }
+        return r;
+    }
+
+    // a cached chunk with this text that still fits the global scope
+    private Chunk reusable(String text, RecordingSymTable global) {
+        List<Chunk> same = cache.get(text);
+        if (same == null) {
+            return null;
+        }
+        for (Chunk c : same) {
+            if (!c.used && global.stillBound(c.deps)) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    // parses and analyzes one chunk, or returns null if it has errors that
+    // mean it may not be a list of whole declarations
+    private Chunk analyzeChunk(String text, RecordingSymTable global,
+                               NameTable names) {
+        Chunk c = new Chunk();
+        Diagnostics scan = new Diagnostics();
+        ErrMsg.collectInto(scan);
+        ProgramNode root;
+        try {
+            root = P4.parse(P4.batchScanner(new StringReader(text), names),
+                            false);
+        } catch (Throwable ex) {
+            return null;
+        } finally {
+            ErrMsg.collectInto(null);
+        }
+        if (scan.errors() > 0) {
+            return null;
+        }
+        c.scanMessages = scan.records();
+        c.decls = root.getDeclList().getDecls();
+
+        Diagnostics name = new Diagnostics();
+        ErrMsg.collectInto(name);
+        global.record(c);
+        try {
+            for (DeclNode decl : c.decls) {
+                decl.nameAnalysis(global);
+            }
+        } finally {
+            global.record(null);
+            ErrMsg.collectInto(null);
+        }
+        c.nameMessages = name.records();
+        for (Sym sym : c.defSyms) {
+            if (sym instanceof TupleDefSym) {
+                tupleVersions.put(sym, nextTupleVersion++);
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Returns the [start, end) offsets of the chunks of src: each ends
+     * after a '.' or a closing ']' that is outside brackets, strings and
+     * comments.  Whatever follows the last one is a chunk too.
+     */
+    static List<int[]> split(String src) {
+        List<int[]> spans = new ArrayList<int[]>();
+        int n = src.length();
+        int depth = 0;
+        int start = 0;
+        int i = 0;
+        while (i < n) {
+            char c = src.charAt(i);
+            if (c == '"') {
+                i++;
+                while (i < n && src.charAt(i) != '"' && src.charAt(i) != '\n') {
+                    i += src.charAt(i) == '\\' && i + 1 < n ? 2 : 1;
+                }
+                if (i < n && src.charAt(i) == '"') {
+                    i++;
+                }
+                continue;
+            }
+            if (c == '$' || (c == '!' && i + 1 < n && src.charAt(i + 1) == '!')) {
+                while (i < n && src.charAt(i) != '\n') {
+                    i++;
+                }
+                continue;
+            }
+            i++;
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+            if (depth == 0 && (c == '.' || c == ']')) {
+                spans.add(new int[] { start, i });
+                start = i;
+            }
+        }
+        if (start < n) {
+            spans.add(new int[] { start, n });
+        }
+        return spans;
+    }
+
+    // moves pos, a line and column as the scanner counts them, over
+    // src[start..end)
+    private static void advance(String src, int start, int end, int[] pos) {
+        for (int i = start; i < end; i++) {
+            char c = src.charAt(i);
+            if (c == '\n') {
+                if (i == 0 || src.charAt(i - 1) != '\r') {
+                    pos[0]++;
+                }
+                pos[1] = 1;
+            } else {
+                if (c == '\r') {
+                    pos[0]++;
+                }
+                pos[1]++;
+            }
+        }
+    }
+
+    // one top-level declaration (or the text after the last one)
+    private static class Chunk {
+        List<DeclNode> decls;
+        List<Diagnostics.Record> scanMessages;
+        List<Diagnostics.Record> nameMessages;
+
+        // global names looked up or declared, and the signature of what
+        // they were bound to (null if nothing)
+        HashMap<String, String> deps = new HashMap<String, String>();
+        // global names declared, and their symbols
+        List<String> defNames = new ArrayList<String>();
+        List<Sym> defSyms = new ArrayList<Sym>();
+
+        int line;            // where the chunk starts in this version
+        int col;
+        boolean used;        // already placed in this version
+
+        // adds messages to d, moved from chunk to file positions
+        void addTo(Diagnostics d, List<Diagnostics.Record> messages) {
+            for (Diagnostics.Record m : messages) {
+                int lineNum = m.lineNum + line - 1;
+                int charNum = m.lineNum == 1 ? m.charNum + col - 1 : m.charNum;
+                d.add(m.severity, lineNum, charNum, m.msg);
+            }
+        }
+    }
+
+    /**
+     * The global scope, recording which global names the chunk being
+     * analyzed depends on.  A lookup that is not satisfied by a local
+     * scope depends on the global binding, or on there being none; a
+     * global declaration depends on the name not being bound yet.
+     */
+    private static class RecordingSymTable extends SymTable {
+        private HashMap<String, Sym> globals = new HashMap<String, Sym>();
+        private int depth = 1;
+        private Chunk chunk;     // being analyzed, or null
+        private IdentityHashMap<Sym, Integer> tupleVersions;
+
+        RecordingSymTable(IdentityHashMap<Sym, Integer> tupleVersions) {
+            this.tupleVersions = tupleVersions;
+        }
+
+        void record(Chunk c) {
+            chunk = c;
+        }
+
+        // puts back a symbol declared by a reused chunk
+        void declare(String name, Sym sym) {
+            globals.put(name, sym);
+            try {
+                super.tryAddDecl(name, sym);
+            } catch (EmptySymTableException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        boolean stillBound(Map<String, String> deps) {
+            for (Map.Entry<String, String> e : deps.entrySet()) {
+                if (!Objects.equals(signature(globals.get(e.getKey())),
+                                    e.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String signature(Sym sym) {
+            if (sym == null) {
+                return null;
+            }
+            if (sym instanceof TupleDefSym) {
+                Integer version = tupleVersions.get(sym);
+                return "tuple " + sym + "#" + version;
+            }
+            return sym.getClass().getName() + " " + sym;
+        }
+
+        private void depend(String name) {
+            Sym sym = globals.get(name);
+            if (chunk == null || chunk.deps.containsKey(name)) {
+                return;
+            }
+            int i = chunk.defNames.indexOf(name);
+            if (i >= 0 && chunk.defSyms.get(i) == sym) {
+                return;       // its own declaration
+            }
+            chunk.deps.put(name, signature(sym));
+        }
+
+        public Sym tryAddDecl(String name, Sym sym)
+        throws EmptySymTableException {
+            if (depth > 1) {
+                return super.tryAddDecl(name, sym);
+            }
+            depend(name);
+            Sym old = super.tryAddDecl(name, sym);
+            if (old == null) {
+                globals.put(name, sym);
+                if (chunk != null) {
+                    chunk.defNames.add(name);
+                    chunk.defSyms.add(sym);
+                }
+            }
+            return old;
+        }
+
+        public Sym lookupLocal(String name) throws EmptySymTableException {
+            if (depth == 1) {
+                depend(name);
+            }
+            return super.lookupLocal(name);
+        }
+
+        public Sym lookupGlobal(String name) throws EmptySymTableException {
+            Sym sym = super.lookupGlobal(name);
+            if (sym == null || sym == globals.get(name)) {
+                depend(name);
+            }
+            return sym;
+        }
+
+        public void addScope() {
+            super.addScope();
+            depth++;
+        }
+
+        public void removeScope() throws EmptySymTableException {
+            super.removeScope();
+            depth--;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.*;
+import java.util.*;
+
+/****
+ * Differential check of IncrementalAnalyzer against analyzing the whole
+ * program.
+ *
+ * Each program is edited at random many times in a row, and after each
+ * edit the incremental result (status, diagnostics and unparsed program)
+ * must be the same as P4Server.analyze gives for the edited text.  The
+ * edits are the kind an editor makes between two saves: deleting,
+ * duplicating or moving a top-level declaration, renaming one use or
+ * declaration of a name to another name of the program, inserting a blank
+ * line or a random token, and going back to the original text.  The
+ * programs are the files named on the command line plus generated ones.
+ *
+ * Usage: java IncrementalCheck [-edits N] [-programs N] [-seed N] [file ...]
+ *   -edits N      edits per program                        (default 300)
+ *   -programs N   number of generated programs             (default 5)
+ *   -seed N       seed for the edits and programs          (default 1)
+ * Prints the first edit that gives a different result for each program,
+ * and how many declarations were reused, and exits with status 1 if any
+ * result differed.
+ ****/
+
+public class IncrementalCheck {
+    private static final String[] TOKENS = {
+        ".", ",", "[", "]", "{", "}", "(", ")", ":", "=", "+", "-", "*",
+        "integer", "logical", "void", "tuple", "if", "else", "while",
+        "return", "read", "write", "True", "False", "7", "\"s\"", "x", "$ c\n"
+    };
+
+    private static int reused = 0;
+    private static int analyzed = 0;
+    private static int whole = 0;
+
+    public static void main(String[] args) throws IOException {
+        int edits = 300;
+        int programs = 5;
+        long seed = 1;
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-edits") && i + 1 < args.length) {
+                edits = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-programs") && i + 1 < args.length) {
+                programs = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+
+        Random rand = new Random(seed);
+        int failed = 0;
+        for (String name : files) {
+            if (!check(name, ScanCheck.read(name), edits, rand)) {
+                failed++;
+            }
+        }
+        for (int i = 0; i < programs; i++) {
+            GenBase gen = new GenBase();
+            gen.funcs = 10;
+            gen.ids = 20;
+            gen.seed = seed + i;
+            if (!check("generated program " + i, gen.generate(), edits, rand)) {
+                failed++;
+            }
+        }
+        int total = files.size() + programs;
+        System.out.println(total + " programs, " + failed + " differ; " +
+                           reused + " declarations reused, " + analyzed +
+                           " analyzed, " + whole + " versions analyzed whole");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Edits src at random, comparing the incremental and whole results
+     * after each edit; prints the first difference and returns false if
+     * there is one.
+     */
+    static boolean check(String name, String src, int edits, Random rand) {
+        IncrementalAnalyzer incr = new IncrementalAnalyzer();
+        String cur = src;
+        String good = src;     // the last version without syntax errors
+        for (int i = 0; i <= edits; i++) {
+            if (i > 0) {
+                // edit on from the last good version, or most edits would
+                // land in programs that don't parse
+                cur = rand.nextInt(20) == 0 ? src : edit(good, rand);
+            }
+            P4Server.Result expected = P4Server.analyze(cur);
+            P4Server.Result actual = incr.analyze(cur);
+            reused += incr.reused;
+            analyzed += incr.analyzed;
+            whole += incr.whole ? 1 : 0;
+            if (!incr.whole) {
+                good = cur;
+            }
+            String what = expected.status != actual.status ? "status" :
+                !expected.diagnostics.equals(actual.diagnostics) ? "diagnostics" :
+                !expected.output.equals(actual.output) ? "output" : null;
+            if (what != null) {
+                System.out.println(name + ", edit " + i + ": " + what +
+                                   " differ");
+                System.out.println("--- program:");
+                System.out.print(cur);
+                System.out.println("--- expected:");
+                System.out.print(expected.diagnostics);
+                System.out.println("--- incremental:");
+                System.out.print(actual.diagnostics);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // src with one random edit
+    private static String edit(String src, Random rand) {
+        List<int[]> spans = IncrementalAnalyzer.split(src);
+        if (spans.isEmpty()) {
+            return src + TOKENS[rand.nextInt(TOKENS.length)];
+        }
+        int[] span = spans.get(rand.nextInt(spans.size()));
+        String decl = src.substring(span[0], span[1]);
+        int at = rand.nextInt(src.length() + 1);
+        switch (rand.nextInt(6)) {
+        case 0:     // delete a declaration
+            return src.substring(0, span[0]) + src.substring(span[1]);
+        case 1:     // duplicate it
+            return src.substring(0, span[1]) + decl + src.substring(span[1]);
+        case 2: {   // move it
+            String rest = src.substring(0, span[0]) + src.substring(span[1]);
+            int[] to = spans.get(rand.nextInt(spans.size()));
+            int pos = Math.min(to[0], rest.length());
+            return rest.substring(0, pos) + decl + rest.substring(pos);
+        }
+        case 3:     // rename a name
+            return rename(src, rand);
+        case 4:     // insert a blank line
+            return src.substring(0, at) + "\n" + src.substring(at);
+        default:    // insert a token
+            return src.substring(0, at) + " " +
+                   TOKENS[rand.nextInt(TOKENS.length)] + " " +
+                   src.substring(at);
+        }
+    }
+
+    // src with one identifier replaced by another identifier of src
+    private static String rename(String src, Random rand) {
+        List<int[]> ids = new ArrayList<int[]>();
+        int i = 0;
+        while (i < src.length()) {
+            if (Character.isLetter(src.charAt(i)) || src.charAt(i) == '_') {
+                int start = i;
+                while (i < src.length() &&
+                       (Character.isLetterOrDigit(src.charAt(i)) ||
+                        src.charAt(i) == '_')) {
+                    i++;
+                }
+                ids.add(new int[] { start, i });
+            } else {
+                i++;
+            }
+        }
+        if (ids.isEmpty()) {
+            return src;
+        }
+        int[] from = ids.get(rand.nextInt(ids.size()));
+        int[] to = ids.get(rand.nextInt(ids.size()));
+        return src.substring(0, from[0]) + src.substring(to[0], to[1]) +
+               src.substring(from[1]);
+    }
+}
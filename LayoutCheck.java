@@ -0,0 +1,346 @@
+import java.io.*;
+import java.lang.ref.Reference;
+import java.util.*;
+
+/****
+ * Check of the flattened tuple layouts (TupleDefSym.layOut) and of the
+ * slots TupleAccessNode resolves colon accesses to.
+ *
+ * Each program is parsed and name-analyzed, and the slots are worked out
+ * again straight from the tuple declarations: a tuple's fields, in the
+ * order they are declared (leaving out the ones that aren't in its
+ * table), each take one slot or, if it is a tuple, as many as that tuple
+ * takes, and a tuple that contains itself has no size.  Every tuple's
+ * layout and every colon access whose fields all resolved must agree with
+ * that; the layouts FlatNameAnalyzer makes must be the same too.  The
+ * programs are the files named on the command line, a built-in one with
+ * duplicate, void, invalid and recursive fields, fields whose names have
+ * equal hash codes and a shadowed tuple type, and generated ones, each
+ * also checked with some of its identifiers renamed.  Each laid-out
+ * tuple's fields must be in a FieldTable that finds every field, and
+ * nothing else.
+ *
+ * Then the heap taken by the fields of many small tuples, kept in a
+ * SymTable each and in a FieldTable each, is printed, along with the time
+ * a field lookup takes in each.
+ *
+ * Usage: java LayoutCheck [-programs N] [-seed N] [file ...]
+ *   -programs N   number of generated programs   (default 5)
+ *   -seed N       seed for the programs          (default 1)
+ * Exits with status 1 if any check failed.
+ ****/
+
+public class LayoutCheck {
+    private static final String SAMPLE =
+        "tuple In { integer z. logical w. }.\n" +
+        "tuple Pt { integer x. integer x. tuple In i. tuple Nope n.\n" +
+        "           void v. integer y. }.\n" +
+        "tuple Rec { integer a. tuple Rec next. integer b. }.\n" +
+        "tuple Holder { integer first. tuple Pt p. tuple Rec r. integer last. }.\n" +
+        "tuple Same { integer AaAa. integer BBBB. integer AaBB. }.\n" +
+        "void ok{} [\n" +
+        "    tuple Holder h. tuple Pt p. tuple Same s.\n" +
+        "    s:BBBB = 1. s:AaBB = 2. s:BBAa = 3.\n" +
+        "    h:first = 1. h:p:y = 2. h:p:i:w = 3. h:r:next:next:b = 4.\n" +
+        "    h:r:a = 5. h:last = 6. p:i:z = p:y.\n" +
+        "]\n" +
+        "void shadowed{} [\n" +
+        "    tuple Holder h. integer In.\n" +
+        "    h:p:i:z = 1. h:p:x = 2.\n" +
+        "]\n" +
+        "void bad{} [\n" +
+        "    tuple Pt p. integer q.\n" +
+        "    p:x:z = 1. p:nope = 2. p:n = 3. p:v = 4. q:x = 5.\n" +
+        "]\n";
+
+    public static void main(String[] args) throws Exception {
+        int programs = 5;
+        long seed = 1;
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-programs") && i + 1 < args.length) {
+                programs = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+
+        Random rand = new Random(seed);
+        Map<String, String> sources = new LinkedHashMap<String, String>();
+        for (String name : files) {
+            sources.put(name, ScanCheck.read(name));
+        }
+        sources.put("built-in program", SAMPLE);
+        for (int i = 0; i < programs; i++) {
+            GenBase gen = new GenBase();
+            gen.seed = seed + i;
+            gen.tuples = 2 + i;
+            String src = gen.generate();
+            sources.put("generated program " + i, src);
+            sources.put("generated program " + i + " renamed",
+                        FlatCheck.renamed(src, rand));
+        }
+
+        int failed = 0;
+        int[] counts = new int[2];
+        for (Map.Entry<String, String> e : sources.entrySet()) {
+            String problem = check(e.getValue(), counts);
+            if (problem != null) {
+                System.out.println(e.getKey() + ": " + problem);
+                failed++;
+            }
+        }
+        System.out.println(sources.size() + " programs, " + counts[0] +
+                           " accesses, " + counts[1] + " with a slot, " +
+                           failed + " failed");
+        measure();
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    // checks the layouts and slots of src; counts[0] and counts[1] are
+    // increased by the number of accesses and of those with a slot.
+    // Returns what went wrong, or null
+    static String check(String src, int[] counts) throws Exception {
+        ProgramNode root = ScanCheck.parse(src);
+        if (root == null) {
+            return null;
+        }
+        SymTable globals = new SymTable();
+        SymTable flatGlobals = new SymTable();
+        ErrMsg.collectInto(new Diagnostics());
+        try {
+            root.nameAnalysis(globals);
+            new FlatNameAnalyzer(FlatAst.of(root), flatGlobals).analyze();
+        } finally {
+            ErrMsg.collectInto(null);
+        }
+
+        // the tuples the global names stand for
+        Map<String, TupleDeclNode> tuples = new HashMap<String, TupleDeclNode>();
+        for (DeclNode decl : root.getDeclList().getDecls()) {
+            String name = decl.getId().toString();
+            if (decl instanceof TupleDeclNode && !tuples.containsKey(name) &&
+                globals.lookupGlobal(name) instanceof TupleDefSym) {
+                tuples.put(name, (TupleDeclNode) decl);
+            }
+        }
+        Map<String, Integer> sizes = new HashMap<String, Integer>();
+        for (String name : tuples.keySet()) {
+            TupleDefSym def = (TupleDefSym) globals.lookupGlobal(name);
+            Map<String, Integer> offsets = offsets(name, tuples, globals, sizes,
+                                                   new HashSet<String>());
+            if (!def.hasLayout() || def.slots() != sizes.get(name) ||
+                def.fieldCount() != offsets.size() ||
+                !(def.getSymTable() instanceof FieldTable)) {
+                return "tuple " + name + " is laid out wrong";
+            }
+            int i = 0;
+            for (Map.Entry<String, Integer> e : offsets.entrySet()) {
+                if (def.fieldIndex(e.getKey()) != i ||
+                    def.offset(i) != e.getValue() ||
+                    def.field(i) != def.getSymTable().lookupLocal(e.getKey())) {
+                    return "field " + name + ":" + e.getKey() + " is laid out wrong";
+                }
+                i++;
+            }
+            if (!def.getSymTable().localDecls().keySet().equals(offsets.keySet()) ||
+                def.fieldIndex(name + "_") >= 0) {
+                return "tuple " + name + " has the wrong FieldTable";
+            }
+            if (!sameLayout(def, (TupleDefSym) flatGlobals.lookupGlobal(name))) {
+                return "FlatNameAnalyzer lays tuple " + name + " out differently";
+            }
+        }
+
+        AccessCollector collector = new AccessCollector();
+        root.write(collector);
+        List<TupleAccessNode> accesses = collector.accesses;
+        for (TupleAccessNode access : accesses) {
+            int expected = slot(access, tuples, globals, sizes);
+            counts[0]++;
+            if (access.getSlot() >= 0) {
+                counts[1]++;
+            }
+            if (access.getSlot() != expected) {
+                StringWriter text = new StringWriter();
+                access.unparse(new PrintWriter(text, true), 0);
+                return text + " has slot " + access.getSlot() +
+                       ", not " + expected;
+            }
+        }
+        return null;
+    }
+
+    // prints the heap taken by the fields of many tuples of 2 to 10
+    // fields, kept in SymTables and in FieldTables, and the time a lookup
+    // of a field, or of a name that isn't one, takes in each
+    static void measure() throws Exception {
+        int n = 20000;
+        Random rand = new Random(1);
+        String[] pool = new String[50];
+        for (int j = 0; j < pool.length; j++) {
+            pool[j] = "field" + j;
+        }
+        String[][] names = new String[n][];
+        Sym[][] syms = new Sym[n][];
+        for (int i = 0; i < n; i++) {
+            int k = 2 + rand.nextInt(9);
+            List<String> shuffled = new ArrayList<String>(Arrays.asList(pool));
+            Collections.shuffle(shuffled, rand);
+            names[i] = shuffled.subList(0, k).toArray(new String[k]);
+            syms[i] = new Sym[k];
+            for (int j = 0; j < k; j++) {
+                syms[i][j] = new Sym("integer");
+            }
+        }
+
+        long base = FlatCheck.used();
+        SymTable[] tables = new SymTable[n];
+        for (int i = 0; i < n; i++) {
+            tables[i] = new SymTable();
+            for (int j = 0; j < names[i].length; j++) {
+                tables[i].tryAddDecl(names[i][j], syms[i][j]);
+            }
+        }
+        long hashed = FlatCheck.used() - base;
+        base = FlatCheck.used();
+        FieldTable[] frozen = new FieldTable[n];
+        for (int i = 0; i < n; i++) {
+            frozen[i] = new FieldTable(names[i].clone(), syms[i].clone());
+        }
+        long compact = FlatCheck.used() - base;
+
+        long hashedTime = Long.MAX_VALUE;
+        long compactTime = Long.MAX_VALUE;
+        long lookups = 0;
+        int sink = 0;
+        for (int r = 0; r < 20; r++) {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < 12; j++) {
+                    sink += tables[i].lookupLocal(pool[j]) == null ? 0 : 1;
+                }
+            }
+            long t1 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < 12; j++) {
+                    sink += frozen[i].lookupLocal(pool[j]) == null ? 0 : 1;
+                }
+            }
+            long t2 = System.nanoTime();
+            hashedTime = Math.min(hashedTime, t1 - t0);
+            compactTime = Math.min(compactTime, t2 - t1);
+            lookups = 12L * n;
+        }
+        System.out.printf("%d tuples of 2-10 fields: SymTable %.0f bytes" +
+                          " and %.1f ns a lookup, FieldTable %.0f bytes" +
+                          " and %.1f ns a lookup%s%n", n,
+                          (double) hashed / n, (double) hashedTime / lookups,
+                          (double) compact / n, (double) compactTime / lookups,
+                          sink == 0 ? "!" : "");
+        Reference.reachabilityFence(tables);
+        Reference.reachabilityFence(frozen);
+    }
+
+    // the offsets of the fields of tuple name, in the order they are
+    // declared; sizes gets the number of slots of name and of the tuples
+    // it contains, -1 for those that contain themselves
+    private static Map<String, Integer> offsets(String name,
+                                                Map<String, TupleDeclNode> tuples,
+                                                SymTable globals,
+                                                Map<String, Integer> sizes,
+                                                Set<String> open)
+        throws Exception
+    {
+        SymLookup fields = ((TupleDefSym) globals.lookupGlobal(name)).getSymTable();
+        Map<String, Integer> offsets = new LinkedHashMap<String, Integer>();
+        open.add(name);
+        int next = 0;
+        for (DeclNode decl : tuples.get(name).getDeclList().getDecls()) {
+            String field = decl.getId().toString();
+            if (offsets.containsKey(field) || fields.lookupLocal(field) == null) {
+                continue;
+            }
+            offsets.put(field, next);
+            int size = 1;
+            TypeNode type = ((VarDeclNode) decl).myType;
+            if (type instanceof TupleNode) {
+                String inner = ((TupleNode) type).myId.toString();
+                if (open.contains(inner)) {
+                    size = -1;
+                } else {
+                    if (!sizes.containsKey(inner)) {
+                        offsets(inner, tuples, globals, sizes, open);
+                    }
+                    size = sizes.get(inner);
+                }
+            }
+            next = next < 0 || size < 0 ? -1 : next + size;
+        }
+        open.remove(name);
+        sizes.put(name, next);
+        return offsets;
+    }
+
+    // the slot access should have: the sum of the offsets of its fields,
+    // or -1 if some field didn't resolve or has no offset
+    private static int slot(TupleAccessNode access,
+                            Map<String, TupleDeclNode> tuples,
+                            SymTable globals, Map<String, Integer> sizes)
+        throws Exception
+    {
+        List<IdNode> ids = new ArrayList<IdNode>();
+        ExpNode exp = access;
+        while (exp instanceof TupleAccessNode) {
+            ids.add(0, ((TupleAccessNode) exp).getId());
+            exp = ((TupleAccessNode) exp).getLoc();
+        }
+        Sym sym = ((IdNode) exp).getSym();
+        int slot = 0;
+        for (IdNode id : ids) {
+            if (!(sym instanceof TupleSym) || id.getSym() == null) {
+                return -1;
+            }
+            String name = sym.toString();
+            int offset = offsets(name, tuples, globals, sizes,
+                                 new HashSet<String>()).get(id.toString());
+            slot = slot < 0 || offset < 0 ? -1 : slot + offset;
+            sym = id.getSym();
+        }
+        return slot;
+    }
+
+    private static boolean sameLayout(TupleDefSym a, TupleDefSym b) {
+        if (b == null || !b.hasLayout() || a.slots() != b.slots() ||
+            a.fieldCount() != b.fieldCount()) {
+            return false;
+        }
+        for (int i = 0; i < a.fieldCount(); i++) {
+            if (a.offset(i) != b.offset(i) ||
+                !a.field(i).toString().equals(b.field(i).toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // collects the TupleAccessNodes of a tree, outermost first, by going
+    // through its children the way AstWriter does; what it writes is
+    // thrown away
+    private static class AccessCollector extends AstWriter {
+        List<TupleAccessNode> accesses = new ArrayList<TupleAccessNode>();
+
+        void node(ASTnode n) {
+            if (n instanceof TupleAccessNode) {
+                accesses.add((TupleAccessNode) n);  // the inner ones are
+                                                    // parts of this one
+            } else if (n != null) {
+                n.write(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * MappedReader
+ *
+ * A Reader over a memory-mapped file, for feeding very large sources to
+ * the scanner.  The file is mapped in large windows and decoded straight
+ * from the mapping: runs of ASCII bytes are copied into the caller's
+ * buffer directly, and anything else goes through a decoder for the
+ * default charset, as FileReader would use, so the scanner sees exactly
+ * the same characters.
+ */
+class MappedReader extends Reader {
+    static final long WINDOW_SIZE = 1L << 28;
+
+    private FileChannel channel;
+    private long size;          // file size
+    private long windowStart;   // file position of window[0]
+    private MappedByteBuffer window;
+    private CharsetDecoder decoder;
+    private boolean asciiCopy;  // ASCII bytes decode to themselves
+    private char[] spare = new char[2];
+    private int pending = -1;   // a char decoded but not yet read, or -1
+
+    MappedReader(String name) throws IOException {
+        channel = new RandomAccessFile(name, "r").getChannel();
+        size = channel.size();
+        Charset cs = Charset.defaultCharset();
+        decoder = cs.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        asciiCopy = cs.equals(StandardCharsets.UTF_8) ||
+                    cs.equals(StandardCharsets.US_ASCII) ||
+                    cs.equals(StandardCharsets.ISO_8859_1);
+        map(0);
+    }
+
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (channel == null) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (pending >= 0) {
+            cbuf[off] = (char) pending;
+            pending = -1;
+            return 1;
+        }
+        // a character may straddle the end of the window; move the window
+        // up to the first byte not yet decoded
+        if (window.remaining() < 8 && windowStart + window.limit() < size) {
+            map(windowStart + window.position());
+        }
+        if (!window.hasRemaining()) {
+            return -1;
+        }
+
+        // fast path: copy ASCII bytes as they are
+        int n = 0;
+        int pos = window.position();
+        int limit = window.limit();
+        while (asciiCopy && n < len && pos < limit) {
+            byte b = window.get(pos);
+            if (b < 0) {
+                break;
+            }
+            cbuf[off + n++] = (char) b;
+            pos++;
+        }
+        window.position(pos);
+
+        // anything else is left to the decoder; a character may need two
+        // chars (a surrogate pair), so if there is room for only one it is
+        // decoded into spare and the second char kept for the next read
+        if (n < len && pos < limit) {
+            boolean last = windowStart + limit == size;
+            boolean small = n == 0 && len < 2;
+            CharBuffer out = small ? CharBuffer.wrap(spare)
+                                   : CharBuffer.wrap(cbuf, off + n, len - n);
+            decoder.decode(window, out, last);
+            if (last && !window.hasRemaining()) {
+                decoder.flush(out);
+            }
+            if (small) {
+                n = out.position();
+                if (n > 0) {
+                    cbuf[off] = spare[0];
+                }
+                if (n > 1) {
+                    pending = spare[1];
+                    n = 1;
+                }
+            } else {
+                n = out.position() - off;
+            }
+        }
+        if (n == 0 && !window.hasRemaining()) {
+            return -1;
+        }
+        return n;
+    }
+
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            window = null;
+        }
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                             Math.min(WINDOW_SIZE, size - start));
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.Arrays;
+
+// **********************************************************************
+// NameTable interns identifier names.  Every distinct name gets exactly
+// one canonical String and a dense integer id (0, 1, 2, ... in order of
+// first appearance).
+//
+// The scanner interns straight out of its character buffer, so an
+// identifier that has been seen before costs no allocation at all.  The
+// canonical String then flows through IdTokenVal, IdNode and the SymTable
+// keys; since String caches its hash code and equals() starts with a
+// reference check, every later hash and compare on the name is cheap.
+//
+// A table only grows, so each file gets a table of its own (P4.parse
+// and the callers of P4.batchScanner make one per file) and its names go
+// when the file's AST does.
+// **********************************************************************
+
+class NameTable {
+    public NameTable() {
+        names = new String[64];
+        slots = new int[128];
+        count = 0;
+    }
+
+    // returns the canonical String for buf[start .. start+len)
+    public synchronized String intern(char[] buf, int start, int len) {
+        int h = 0;
+        for (int i = start; i < start + len; i++) {
+            h = 31 * h + buf[i];
+        }
+        int mask = slots.length - 1;
+        for (int s = mix(h) & mask; ; s = (s + 1) & mask) {
+            int id = slots[s] - 1;
+            if (id < 0) {
+                return add(s, new String(buf, start, len));
+            }
+            String name = names[id];
+            if (name.hashCode() == h && sameChars(name, buf, start, len)) {
+                return name;
+            }
+        }
+    }
+
+    // returns the canonical String equal to name
+    public synchronized String intern(String name) {
+        int s = find(name);
+        int id = slots[s] - 1;
+        return id < 0 ? add(s, name) : names[id];
+    }
+
+    // returns the id of name, or -1 if it has never been interned
+    public synchronized int idOf(String name) {
+        return slots[find(name)] - 1;
+    }
+
+    // returns the name with the given id
+    public synchronized String nameOf(int id) {
+        if (id < 0 || id >= count)
+            throw new IllegalArgumentException();
+        return names[id];
+    }
+
+    // returns the number of distinct names interned so far
+    public synchronized int size() {
+        return count;
+    }
+
+    // returns the slot holding name, or the empty slot where it belongs
+    private int find(String name) {
+        int h = name.hashCode();
+        int mask = slots.length - 1;
+        for (int s = mix(h) & mask; ; s = (s + 1) & mask) {
+            int id = slots[s] - 1;
+            if (id < 0 || names[id].equals(name)) {
+                return s;
+            }
+        }
+    }
+
+    private String add(int slot, String name) {
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+        }
+        names[count] = name;
+        slots[slot] = ++count;   // slots hold id+1 so that 0 means empty
+        if (count * 2 > slots.length) {
+            rehash();
+        }
+        return name;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < count; id++) {
+            int s = mix(names[id].hashCode()) & mask;
+            while (slots[s] != 0) {
+                s = (s + 1) & mask;
+            }
+            slots[s] = id + 1;
+        }
+    }
+
+    private static boolean sameChars(String name, char[] buf, int start, int len) {
+        if (name.length() != len)
+            return false;
+        for (int i = 0; i < len; i++) {
+            if (name.charAt(i) != buf[start + i])
+                return false;
+        }
+        return true;
+    }
+
+    // spread the String hash so that linear probing doesn't cluster
+    private static int mix(int h) {
+        return (h ^ (h >>> 16)) * 0x45d9f3b;
+    }
+
+    private String[] names;   // canonical names, indexed by id
+    private int[] slots;      // open-addressing hash table of id+1
+    private int count;
+}
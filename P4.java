@@ -1,4 +1,7 @@
 import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
 import java_cup.runtime.*;
 
 /****
@@ -7,60 +10,579 @@ import java_cup.runtime.*;
  * There should be 2 command-line arguments:
  * 1. the file to be parsed
  * 2. the output file into which the AST built by the parser should be unparsed
+ *
+ * They may be preceded by options:
+ *   -shadow     use the single-hash-table ShadowSymTable for name analysis
+ *   -persistent use ForkableSymTable, kept as a PersistentSymTable
+ *   -sortdiag   print error messages sorted by position
+ *   -maxdiag N  print at most N error messages per file
+ *   -mmap       read input files through a memory mapping (MappedReader)
+ *   -handscan   scan with the hand-written BaseScanner instead of Yylex
+ *   -cache DIR  reuse the results of files analyzed before, kept in DIR
+ *               (see ResultCache)
+ *   -cachesize MB  most megabytes of results to keep in DIR  (default 256)
+ *   -astout FILE   also write the analyzed AST to FILE in AstWriter's
+ *               binary form (not in batch mode; the cache is not used)
+ *   -flat       analyze and unparse the program as a FlatAst (not with
+ *               -astout, which writes the tree's own symbols)
+ *   -astin      the file to be parsed is instead an AST written by
+ *               -astout, which is loaded as a FlatAst without building
+ *               the tree of ASTnodes (implies -flat; the cache is not
+ *               used, and messages from the scanner, not being in the
+ *               AST, are not repeated)
+ *   -parallel N analyze the function bodies of each file on N threads
+ *               (see ParallelAnalyzer; -shadow is then not used)
+ *
+ * In batch mode there is 1 command-line argument instead, following -batch:
+ * either a directory, all of whose .base files are analyzed, or a manifest
+ * file listing one .base file per line.  Each X.base is unparsed to X.out
+ * and a summary of the errors in each file is printed at the end.  With
+ * -threads N the files are analyzed on N threads.
  ****/
 
 public class P4 {
+    // how error messages are printed; see Diagnostics
+    static boolean sortDiagnostics = false;
+    static int maxDiagnostics = -1;
+
+    // name-analyze with a ForkableSymTable (overrides -shadow)
+    static boolean persistentTable = false;
+
+    // read input files through MappedReader rather than FileReader
+    static boolean mapInput = false;
+
+    // scan with BaseScanner rather than the JLex-generated Yylex
+    static boolean handScanner = false;
+
+    // results of earlier runs, or null if -cache wasn't given
+    static ResultCache cache = null;
+
+    // analyze and unparse a FlatAst rather than the tree of ASTnodes
+    static boolean flatAst = false;
+
+    // threads to analyze the function bodies of one file on
+    static int parallelism = 1;
+
     public static void main(String[] args)
-        throws IOException, EmptySymTableException, DuplicateSymNameException // may be thrown by the scanner
+        throws IOException, InterruptedException, EmptySymTableException, DuplicateSymNameException // may be thrown by the scanner
     {
+        // check for command-line options
+        boolean shadow = false;
+        boolean batch = false;
+        int threads = 1;
+        String cacheDir = null;
+        long cacheSize = 256;
+        String astOut = null;
+        boolean astIn = false;
+        int argc = 0;
+        while (argc < args.length && args[argc].startsWith("-")) {
+            if (args[argc].equals("-shadow")) {
+                shadow = true;
+            } else if (args[argc].equals("-persistent")) {
+                persistentTable = true;
+            } else if (args[argc].equals("-batch")) {
+                batch = true;
+            } else if (args[argc].equals("-threads") && argc + 1 < args.length) {
+                threads = Math.max(1, Integer.parseInt(args[++argc]));
+            } else if (args[argc].equals("-mmap")) {
+                mapInput = true;
+            } else if (args[argc].equals("-handscan")) {
+                handScanner = true;
+            } else if (args[argc].equals("-sortdiag")) {
+                sortDiagnostics = true;
+            } else if (args[argc].equals("-maxdiag") && argc + 1 < args.length) {
+                maxDiagnostics = Math.max(0, Integer.parseInt(args[++argc]));
+            } else if (args[argc].equals("-cache") && argc + 1 < args.length) {
+                cacheDir = args[++argc];
+            } else if (args[argc].equals("-cachesize") && argc + 1 < args.length) {
+                cacheSize = Math.max(1, Long.parseLong(args[++argc]));
+            } else if (args[argc].equals("-astout") && argc + 1 < args.length) {
+                astOut = args[++argc];
+            } else if (args[argc].equals("-parallel") && argc + 1 < args.length) {
+                parallelism = Math.max(1, Integer.parseInt(args[++argc]));
+            } else if (args[argc].equals("-flat")) {
+                flatAst = true;
+            } else if (args[argc].equals("-astin")) {
+                astIn = true;
+            } else {
+                System.err.println("unknown option " + args[argc]);
+                System.exit(-1);
+            }
+            argc++;
+        }
+        if (cacheDir != null && astOut == null && !astIn) {
+            cache = new ResultCache(cacheDir, cacheSize << 20);
+        }
+        if (astOut != null) {
+            flatAst = false;
+        }
+        if (astIn) {
+            astOut = null;
+            flatAst = true;
+        }
+
+        if (batch) {
+            if (args.length - argc != 1) {
+                System.err.println("please supply a directory or manifest " +
+                                   "of files to be parsed");
+                System.exit(-1);
+            }
+            runBatch(args[argc], shadow, threads);
+            return;
+        }
+
         // check for command-line args
-        if (args.length != 2) {
+        if (args.length - argc != 2) {
             System.err.println("please supply name of file to be parsed " +
 			                   "and name of file for unparsed version");
             System.exit(-1);
         }
+        String inName = args[argc];
+        String outName = args[argc + 1];
 
         // open input file
-        FileReader inFile = null;
+        Reader inFile = null;
+        byte[] astBytes = null;
         try {
-            inFile = new FileReader(args[0]);
-        } catch (FileNotFoundException ex) {
-            System.err.println("file " + args[0] + " not found");
+            if (astIn) {
+                astBytes = Files.readAllBytes(Paths.get(inName));
+            } else {
+                inFile = openInput(inName);
+            }
+        } catch (IOException ex) {
+            System.err.println("file " + inName + " not found");
             System.exit(-1);
         }
 
         // open output file
         PrintWriter outFile = null;
         try {
-            outFile = new PrintWriter(args[1]);
+            outFile = openOutput(outName);
         } catch (FileNotFoundException ex) {
-            System.err.println("file " + args[1] +
+            System.err.println("file " + outName +
                                " could not be opened for writing");
             System.exit(-1);
         }
 
-        parser P = new parser(new Yylex(inFile));
+        // collect the error messages and print them all at the end
+        Diagnostics diagnostics = newDiagnostics(System.err);
+        ErrMsg.collectInto(diagnostics);
 
-        Symbol root = null; // parser returns a Symbol whose value field
-                            // is the translation of the root nonterminal
-                            // (i.e., of the nonterminal "program")
+        if (cache != null) {
+            inFile.close();
+            try {
+                analyzeCached(inName, outFile, shadow, diagnostics, true);
+                System.out.println ("program parsed correctly");
+            } catch (IOException ex) {
+                System.err.println("file " + inName + " not found");
+                System.exit(-1);
+            } catch (Exception ex) {
+                ErrMsg.flush();
+                System.err.println("exception occured during parse: " + ex);
+                System.exit(-1);
+            }
+            ErrMsg.flush();
+            outFile.close();
+            return;
+        }
+
+        if (astIn) {
+            FlatAst ast = null;
+            try {
+                ast = FlatAst.read(astBytes);
+                astBytes = null;
+                System.out.println ("program read correctly");
+            } catch (IOException ex) {
+                System.err.println("file " + inName + " could not be read: " +
+                                   ex.getMessage());
+                System.exit(-1);
+            }
+            analyze(ast, newSymTable(shadow), outFile);
+            ErrMsg.flush();
+            outFile.close();
+            return;
+        }
 
+        ProgramNode root = null;
         try {
-            root = P.parse(); // do the parse
+            root = parse(inFile); // do the parse
             System.out.println ("program parsed correctly");
         } catch (Exception ex){
+            ErrMsg.flush();
             System.err.println("exception occured during parse: " + ex);
             System.exit(-1);
         }
 		
-			// ****** Add name analysis part here ******
-		SymTable symTable = new SymTable();
-		((ProgramNode) root.value).nameAnalysis(symTable);
-		if (!ErrMsg.flag) {	
-			((ASTnode)root.value).unparse(outFile, 0);
-		}
+        if (flatAst) {
+            FlatAst ast = FlatAst.of(root);
+            root = null;    // so the tree can be collected during analysis
+            analyze(ast, newSymTable(shadow), outFile);
+        } else {
+            analyze(root, newSymTable(shadow), outFile);
+        }
+        ErrMsg.flush();
         outFile.close();
 
+        if (astOut != null) {
+            try {
+                FileOutputStream ast = new FileOutputStream(astOut);
+                ast.write(AstWriter.write(root));
+                ast.close();
+            } catch (IOException ex) {
+                System.err.println("file " + astOut +
+                                   " could not be written: " + ex.getMessage());
+                System.exit(-1);
+            }
+        }
+
         return;
     }
+
+    /**
+     * Opens a file to be parsed, memory-mapped if -mmap was given.
+     */
+    static Reader openInput(String name) throws IOException {
+        if (mapInput) {
+            return new MappedReader(name);
+        }
+        return new FileReader(name);
+    }
+
+    /**
+     * Opens the file a program is unparsed into, buffered for the many
+     * short writes unparse makes.
+     */
+    static PrintWriter openOutput(String name) throws FileNotFoundException {
+        return new PrintWriter(new UnparseWriter(new FileOutputStream(name)));
+    }
+
+    /**
+     * Returns a collector set up by the -sortdiag and -maxdiag options.
+     */
+    static Diagnostics newDiagnostics(PrintStream sink) {
+        Diagnostics d = new Diagnostics(sink);
+        d.setSorted(sortDiagnostics);
+        d.setLimit(maxDiagnostics);
+        return d;
+    }
+
+    /**
+     * Scans and parses one program.  Returns the root of the AST.
+     */
+    static ProgramNode parse(Reader in) throws Exception {
+        return parse(in, true);
+    }
+
+    /**
+     * Like parse(in), but if exitOnError is false a syntax error makes
+     * this throw instead of exiting.
+     */
+    static ProgramNode parse(Reader in, boolean exitOnError) throws Exception {
+        return parse(newScanner(in, new NameTable()), exitOnError);
+    }
+
+    /**
+     * Returns a scanner for in, a BaseScanner if -handscan was given, that
+     * interns identifiers in names.
+     */
+    static java_cup.runtime.Scanner newScanner(Reader in, NameTable names) {
+        if (handScanner) {
+            BaseScanner s = new BaseScanner(in);
+            s.setNameTable(names);
+            return s;
+        }
+        Yylex lex = new Yylex(in);
+        lex.setNameTable(names);
+        return lex;
+    }
+
+    /**
+     * Parses the program read by the given scanner: a Yylex or a
+     * BaseScanner.
+     */
+    static ProgramNode parse(java_cup.runtime.Scanner lex, boolean exitOnError) throws Exception {
+        ReusableParser P = parsers.get();
+        P.reset(lex, exitOnError);
+        try {
+            Symbol root = P.parse(); // parser returns a Symbol whose value field
+                                     // is the translation of the root nonterminal
+                                     // (i.e., of the nonterminal "program")
+            return (ProgramNode) root.value;
+        } finally {
+            P.release();
+        }
+    }
+
+    // each thread parses with one parser, reused from file to file
+    private static final ThreadLocal<ReusableParser> parsers =
+        new ThreadLocal<ReusableParser>() {
+            protected ReusableParser initialValue() {
+                return new ReusableParser();
+            }
+        };
+
+    /**
+     * Returns an empty symbol table of the kind the options ask for.
+     */
+    static SymTable newSymTable(boolean shadow) {
+        if (persistentTable) {
+            return new ForkableSymTable();
+        }
+        return shadow ? new ShadowSymTable() : new SymTable();
+    }
+
+    /**
+     * Runs name analysis on a parsed program and, if no errors were
+     * reported, unparses it to out.  With -flat the tree is flattened
+     * and then dropped, so a caller that doesn't keep root lets it be
+     * collected while the FlatAst is analyzed.
+     */
+    static void analyze(ProgramNode root, SymTable symTable, PrintWriter out) {
+        if (flatAst) {
+            FlatAst ast = FlatAst.of(root);
+            root = null;
+            analyze(ast, symTable, out);
+            return;
+        }
+        if (parallelism > 1) {
+            ParallelAnalyzer.analyze(root, parallelism);
+        } else {
+            root.nameAnalysis(symTable);
+        }
+		if (!ErrMsg.hasErrors()) {	
+			root.unparse(out, 0);
+		}
+    }
+
+    /**
+     * Runs name analysis on a FlatAst and, if no errors were reported,
+     * unparses it to out.
+     */
+    static void analyze(FlatAst ast, SymTable symTable, PrintWriter out) {
+        new FlatNameAnalyzer(ast, symTable).analyze();
+        if (!ErrMsg.hasErrors()) {
+            new FlatUnparser(ast, out).unparse();
+        }
+    }
+
+    /**
+     * Analyzes one file through the result cache.  If the cache has
+     * results for the file's contents they are added to d and the
+     * unparsed program is written to out without scanning, parsing or
+     * analyzing anything; otherwise the file is analyzed as usual and its
+     * results are stored.  Throws an exception if the file can't be
+     * parsed, as parse does.
+     */
+    static void analyzeCached(String inName, PrintWriter out, boolean shadow,
+                              Diagnostics d, boolean exitOnError)
+        throws Exception
+    {
+        // the whole file is read at once, to be hashed
+        byte[] src = Files.readAllBytes(Paths.get(inName));
+        String key = ResultCache.key(src, handScanner ? "BaseScanner" : "Yylex");
+        ResultCache.Entry hit = cache.get(key);
+        if (hit != null) {
+            for (Diagnostics.Record m : hit.messages) {
+                d.add(m.severity, m.lineNum, m.charNum, m.msg);
+            }
+            out.write(hit.output);
+            return;
+        }
+
+        Reader in = new InputStreamReader(new ByteArrayInputStream(src));
+        StringWriter text = new StringWriter();
+        PrintWriter textOut = new PrintWriter(text);
+        analyze(parse(batchScanner(in, new NameTable()), exitOnError),
+                newSymTable(shadow), textOut);
+        textOut.flush();
+        String output = text.toString();
+        out.write(output);
+        cache.put(key, new ResultCache.Entry(d.records(), output));
+    }
+
+    /**
+     * Analyzes every file named by dirOrManifest in this JVM, on the given
+     * number of threads, and prints a summary of the errors found in each.
+     * Each file is analyzed with its own scanner and Diagnostics collector;
+     * the diagnostics are printed per file, in the order the files were
+     * named, so the output doesn't depend on the number of threads.
+     */
+    static void runBatch(String dirOrManifest, boolean shadow, int threads)
+        throws IOException, InterruptedException
+    {
+        List<String> files = batchFiles(dirOrManifest);
+        List<Future<BatchResult>> results = new ArrayList<Future<BatchResult>>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (String name : files) {
+            results.add(pool.submit(new Callable<BatchResult>() {
+                public BatchResult call() {
+                    return analyzeFile(name, shadow);
+                }
+            }));
+        }
+        pool.shutdown();
+
+        int totalErrors = 0;
+        int totalWarnings = 0;
+        int failed = 0;
+        StringBuilder summary = new StringBuilder();
+        for (Future<BatchResult> f : results) {
+            BatchResult r;
+            try {
+                r = f.get();
+            } catch (ExecutionException ex) {
+                // analyzeFile catches everything, so this is a bug there;
+                // still, one file mustn't cost the summary of the others
+                r = new BatchResult(files.get(results.indexOf(f)));
+                r.parseFailed(ex.getCause());
+            }
+            r.diagnostics.print(System.err);
+            totalErrors += r.diagnostics.errors();
+            totalWarnings += r.diagnostics.warnings();
+            if (r.failed) {
+                failed++;
+            }
+            summary.append(r.name).append(": ").append(r.status).append("\n");
+        }
+
+        System.out.print(summary);
+        System.out.println(files.size() + " files, " + totalErrors +
+                           " errors, " + totalWarnings + " warnings, " +
+                           failed + " failed");
+    }
+
+    // each batch or server thread reuses one scanner, and its buffer, for
+    // the files it analyzes
+    private static final ThreadLocal<java_cup.runtime.Scanner> batchScanners =
+        new ThreadLocal<java_cup.runtime.Scanner>();
+
+    /**
+     * Returns this thread's reusable scanner, reset to read in and to
+     * intern identifiers in names.  Give each file a new table: a table
+     * only grows, and one kept from file to file would hold every name
+     * the thread has ever seen.
+     */
+    static java_cup.runtime.Scanner batchScanner(Reader in, NameTable names) {
+        java_cup.runtime.Scanner s = batchScanners.get();
+        if (s instanceof Yylex) {
+            ((Yylex) s).reset(in);
+            ((Yylex) s).setNameTable(names);
+        } else if (s instanceof BaseScanner) {
+            ((BaseScanner) s).reset(in);
+            ((BaseScanner) s).setNameTable(names);
+        } else {
+            s = newScanner(in, names);
+            batchScanners.set(s);
+        }
+        return s;
+    }
+
+    /**
+     * Scans, parses, name-analyzes and unparses one file of a batch,
+     * collecting its diagnostics.  Anything thrown while doing so is
+     * recorded as the file having failed, never passed on.
+     */
+    static BatchResult analyzeFile(String name, boolean shadow) {
+        BatchResult r = new BatchResult(name);
+        ErrMsg.collectInto(r.diagnostics);
+        try {
+            if (cache != null) {
+                PrintWriter out = openOutput(outName(name));
+                try {
+                    analyzeCached(name, out, shadow, r.diagnostics, false);
+                    r.status = r.diagnostics.errors() + " errors, " +
+                               r.diagnostics.warnings() + " warnings";
+                } catch (IOException ex) {
+                    throw ex;
+                } catch (Throwable ex) {
+                    r.parseFailed(ex);
+                } finally {
+                    out.close();
+                }
+                return r;
+            }
+            Reader in = openInput(name);
+            PrintWriter out = openOutput(outName(name));
+            try {
+                analyze(parse(batchScanner(in, new NameTable()), false),
+                        newSymTable(shadow), out);
+                r.status = r.diagnostics.errors() + " errors, " +
+                           r.diagnostics.warnings() + " warnings";
+            } catch (Throwable ex) {
+                // the scanner throws an Error on input it can't match, and
+                // may fail in other ways on bytes it doesn't expect; either
+                // way this file failed and the rest of the batch goes on
+                r.parseFailed(ex);
+            } finally {
+                in.close();
+                out.close();
+            }
+        } catch (IOException ex) {
+            r.status = "could not be read or written: " + ex.getMessage();
+            r.failed = true;
+        } finally {
+            ErrMsg.collectInto(null);
+        }
+        return r;
+    }
+
+    // the outcome of analyzing one file of a batch
+    static class BatchResult {
+        String name;
+        Diagnostics diagnostics = newDiagnostics(null);
+        String status;
+        boolean failed = false;
+
+        BatchResult(String name) {
+            this.name = name;
+        }
+
+        // records that the file couldn't be parsed because of ex, giving
+        // ex as the reason if no error was reported
+        void parseFailed(Throwable ex) {
+            status = "parse failed, " + diagnostics.errors() + " errors, " +
+                     diagnostics.warnings() + " warnings";
+            if (diagnostics.errors() == 0) {
+                status += " (" + ex + ")";
+            }
+            failed = true;
+        }
+    }
+
+    /**
+     * Returns the .base files in a directory (sorted by name) or the files
+     * listed in a manifest, one per line; blank lines are skipped.
+     */
+    static List<String> batchFiles(String dirOrManifest) throws IOException {
+        List<String> files = new ArrayList<String>();
+        File f = new File(dirOrManifest);
+        if (f.isDirectory()) {
+            String[] names = f.list();
+            Arrays.sort(names);
+            for (String name : names) {
+                if (name.endsWith(".base")) {
+                    files.add(new File(f, name).getPath());
+                }
+            }
+        } else {
+            BufferedReader r = new BufferedReader(new FileReader(f));
+            String line;
+            while ((line = r.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    files.add(line);
+                }
+            }
+            r.close();
+        }
+        return files;
+    }
+
+    // X.base -> X.out; any other name just gets .out appended
+    static String outName(String name) {
+        if (name.endsWith(".base")) {
+            name = name.substring(0, name.length() - ".base".length());
+        }
+        return name + ".out";
+    }
 }
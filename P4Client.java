@@ -0,0 +1,129 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/****
+ * Thin client for P4Server: analyzes a file on a running server and
+ * reports the results the way P4 does, so it can stand in for
+ * "java P4 infile outfile".
+ *
+ * Usage: java P4Client [-socket PATH | -port N] infile outfile
+ *        java P4Client [-socket PATH | -port N] -stop
+ * The server is reached on the Unix domain socket PATH if given, and
+ * otherwise on localhost port N (default 7474).  -stop shuts it down (on
+ * a port, only a server started with -allowstop).
+ * The file is sent with its full path, so a server started with
+ * -incremental can tell successive versions of it apart.
+ ****/
+
+public class P4Client {
+    public static void main(String[] args) throws IOException {
+        String socketPath = null;
+        int port = P4Server.DEFAULT_PORT;
+        boolean stop = false;
+        int argc = 0;
+        while (argc < args.length && args[argc].startsWith("-")) {
+            boolean hasArg = argc + 1 < args.length;
+            if (args[argc].equals("-socket") && hasArg) {
+                socketPath = args[++argc];
+            } else if (args[argc].equals("-port") && hasArg) {
+                port = Integer.parseInt(args[++argc]);
+            } else if (args[argc].equals("-stop")) {
+                stop = true;
+            } else {
+                System.err.println("unknown option " + args[argc]);
+                System.exit(-1);
+            }
+            argc++;
+        }
+        if (!stop && args.length - argc != 2) {
+            System.err.println("please supply name of file to be parsed " +
+                               "and name of file for unparsed version");
+            System.exit(-1);
+        }
+
+        SocketChannel channel;
+        try {
+            if (socketPath != null) {
+                channel = SocketChannel.open(
+                    UnixDomainSocketAddress.of(Paths.get(socketPath)));
+            } else {
+                channel = SocketChannel.open(new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), port));
+            }
+        } catch (IOException ex) {
+            System.err.println("no P4Server running at " +
+                               (socketPath != null ? socketPath : "port " + port));
+            System.exit(-1);
+            return;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Channels.newInputStream(channel)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            Channels.newOutputStream(channel)));
+
+        if (stop) {
+            out.writeInt(P4Server.STOP);
+            out.flush();
+            channel.close();
+            return;
+        }
+
+        String inName = args[argc];
+        String outName = args[argc + 1];
+        String src;
+        try {
+            src = read(inName);
+        } catch (IOException ex) {
+            System.err.println("file " + inName + " not found");
+            System.exit(-1);
+            return;
+        }
+        PrintWriter outFile = null;
+        try {
+            outFile = P4.openOutput(outName);
+        } catch (FileNotFoundException ex) {
+            System.err.println("file " + outName +
+                               " could not be opened for writing");
+            System.exit(-1);
+        }
+
+        if (src.getBytes(StandardCharsets.UTF_8).length > P4Server.MAX_STRING) {
+            System.err.println("file " + inName + " is too large for P4Server");
+            System.exit(-1);
+        }
+        out.writeInt(P4Server.ANALYZE_FILE);
+        P4Server.writeString(out, new File(inName).getCanonicalPath());
+        P4Server.writeString(out, src);
+        out.flush();
+        int status = in.readInt();
+        String diagnostics = P4Server.readString(in, Integer.MAX_VALUE);
+        String output = P4Server.readString(in, Integer.MAX_VALUE);
+        channel.close();
+
+        if (status == P4Server.OK) {
+            System.out.println("program parsed correctly");
+        }
+        System.err.print(diagnostics);
+        System.err.flush();
+        outFile.print(output);
+        outFile.close();
+        if (status != P4Server.OK) {
+            System.exit(-1);
+        }
+    }
+
+    static String read(String name) throws IOException {
+        Reader in = new FileReader(name);
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            sb.append(buf, 0, n);
+        }
+        in.close();
+        return sb.toString();
+    }
+}
@@ -0,0 +1,305 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.*;
+
+/****
+ * A resident P4: analyzes programs sent by P4Client, so that running the
+ * analyzer from an editor or a commit hook doesn't pay for starting and
+ * warming up a JVM each time.
+ *
+ * The server listens on a Unix domain socket, which only its owner may
+ * connect to, or on a TCP port of the loopback interface only, and warms
+ * up its scanner, parser and name analyzer on a generated program before
+ * taking requests.  Each request
+ * is analyzed as P4 would analyze a file, with its own diagnostics, name
+ * table and symbol table, on one of a fixed number of worker threads.
+ *
+ * Usage: java P4Server [options]
+ *   -socket PATH  listen on a Unix domain socket at PATH
+ *   -port N       listen on localhost port N         (default 7474)
+ *   -threads N    number of worker threads            (default 2)
+ *   -warmup N     programs analyzed before serving    (default 50)
+ *   -incremental  keep the last version of each file a client names,
+ *                 and re-analyze only the declarations that changed
+ *   -allowstop    obey STOP on a TCP port too, where any local user
+ *                 can connect
+ * and the P4 options -shadow, -handscan, -sortdiag and -maxdiag N.
+ *
+ * Protocol: a connection carries any number of requests, each answered
+ * before the next is read.  Integers are 4 bytes, big-endian; a string is
+ * its length in bytes followed by its UTF-8 encoding.
+ *   request:  ANALYZE, source string
+ *           | ANALYZE_FILE, file name string, source string
+ *           | STOP
+ *   response: status, diagnostics string, unparsed program string
+ * where status is OK, or FAILED if the program could not be parsed or its
+ * analysis failed (the diagnostics then end with the reason and there is
+ * no unparsed program).  A string longer than MAX_STRING bytes ends the
+ * connection.  STOP has no response; the server closes the connection
+ * and exits.  On a TCP port STOP just closes the connection unless the
+ * server was started with -allowstop.
+ * ANALYZE_FILE is answered like ANALYZE; with -incremental the server
+ * remembers the last version of each file name (up to MAX_FILES of them)
+ * and analyzes the next one with an IncrementalAnalyzer, and otherwise
+ * the name is ignored.
+ ****/
+
+public class P4Server {
+    static final int DEFAULT_PORT = 7474;
+
+    // requests
+    static final int ANALYZE = 1;
+    static final int STOP = 2;
+    static final int ANALYZE_FILE = 3;
+
+    // response status
+    static final int OK = 0;
+    static final int FAILED = 1;
+
+    // longest string accepted in a request
+    static final int MAX_STRING = 16 << 20;
+
+    // files remembered with -incremental
+    static final int MAX_FILES = 256;
+
+    private static boolean shadow = false;
+    private static volatile boolean stopping = false;
+    private static boolean incremental = false;
+    private static boolean allowStop = false;
+
+    // the analyzers of the files most recently named, least recent first
+    private static final LinkedHashMap<String, IncrementalAnalyzer> files =
+        new LinkedHashMap<String, IncrementalAnalyzer>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, IncrementalAnalyzer> eldest) {
+                return size() > MAX_FILES;
+            }
+        };
+
+    public static void main(String[] args) throws IOException {
+        String socketPath = null;
+        int port = DEFAULT_PORT;
+        int threads = 2;
+        int warmup = 50;
+        for (int i = 0; i < args.length; i++) {
+            boolean hasArg = i + 1 < args.length;
+            if (args[i].equals("-socket") && hasArg) {
+                socketPath = args[++i];
+            } else if (args[i].equals("-port") && hasArg) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-threads") && hasArg) {
+                threads = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-warmup") && hasArg) {
+                warmup = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-incremental")) {
+                incremental = true;
+            } else if (args[i].equals("-allowstop")) {
+                allowStop = true;
+            } else if (args[i].equals("-shadow")) {
+                shadow = true;
+            } else if (args[i].equals("-handscan")) {
+                P4.handScanner = true;
+            } else if (args[i].equals("-sortdiag")) {
+                P4.sortDiagnostics = true;
+            } else if (args[i].equals("-maxdiag") && hasArg) {
+                P4.maxDiagnostics = Math.max(0, Integer.parseInt(args[++i]));
+            } else {
+                System.err.println("unknown option " + args[i]);
+                System.exit(-1);
+            }
+        }
+
+        // bind first, so clients that connect while we warm up just wait
+        ServerSocketChannel server;
+        if (socketPath != null) {
+            Path path = Paths.get(socketPath);
+            Files.deleteIfExists(path);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(path));
+            path.toFile().deleteOnExit();
+            Files.setPosixFilePermissions(path,
+                PosixFilePermissions.fromString("rw-------"));
+        } else {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                              port));
+        }
+
+        String program = new GenBase().generate();
+        for (int i = 0; i < warmup; i++) {
+            analyze(program);
+        }
+        System.out.println("P4Server listening on " + server.getLocalAddress());
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        while (!stopping) {
+            SocketChannel client;
+            try {
+                client = server.accept();
+            } catch (ClosedChannelException ex) {
+                break;     // closed by a STOP request
+            }
+            pool.execute(new Runnable() {
+                public void run() {
+                    serve(client, server);
+                }
+            });
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Answers the requests that arrive on one connection until the client
+     * closes it.  A request whose analysis fails is answered FAILED, and
+     * the failure is logged; only a broken connection ends serving it.
+     */
+    static void serve(SocketChannel client, ServerSocketChannel server) {
+        try {
+            boolean mayStop = allowStop ||
+                server.getLocalAddress() instanceof UnixDomainSocketAddress;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(client)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(client)));
+            while (true) {
+                int request;
+                try {
+                    request = in.readInt();
+                } catch (EOFException ex) {
+                    break;
+                }
+                if (request == ANALYZE || request == ANALYZE_FILE) {
+                    String name = request == ANALYZE_FILE
+                        ? readString(in, MAX_STRING) : null;
+                    String src = readString(in, MAX_STRING);
+                    Result r;
+                    try {
+                        r = name != null && incremental
+                            ? analyzer(name).analyze(src) : analyze(src);
+                    } catch (Throwable ex) {
+                        System.err.println("P4Server: analysis failed");
+                        ex.printStackTrace();
+                        if (name != null && incremental) {
+                            forget(name);   // its state may be half-updated
+                        }
+                        r = new Result();
+                        r.status = FAILED;
+                        r.diagnostics = "exception occured during analysis: " +
+                                        ex + System.lineSeparator();
+                    }
+                    out.writeInt(r.status);
+                    writeString(out, r.diagnostics);
+                    writeString(out, r.output);
+                    out.flush();
+                } else if (request == STOP && mayStop) {
+                    stopping = true;
+                    server.close();
+                    break;
+                } else {
+                    break;     // not a client we understand, or may obey
+                }
+            }
+        } catch (IOException ex) {
+            // the client went away; nothing to answer
+        } finally {
+            try {
+                client.close();
+            } catch (IOException ex) {
+            }
+        }
+    }
+
+    /**
+     * Scans, parses, name-analyzes and unparses one program, as P4 does
+     * for a file.
+     */
+    static Result analyze(String src) {
+        Result r = new Result();
+        Diagnostics d = P4.newDiagnostics(null);
+        ErrMsg.collectInto(d);
+        try {
+            ProgramNode root;
+            try {
+                // a new name table each time, so a long-running server
+                // doesn't keep every name it has ever seen
+                root = P4.parse(P4.batchScanner(new StringReader(src),
+                                                new NameTable()), false);
+            } catch (Throwable ex) {
+                r.status = FAILED;
+                r.diagnostics = print(d);
+                if (d.errors() == 0) {
+                    // failed for some reason other than a syntax error
+                    r.diagnostics += "exception occured during parse: " + ex +
+                                     System.lineSeparator();
+                }
+                return r;
+            }
+            StringWriter text = new StringWriter();
+            PrintWriter out = new PrintWriter(text);
+            P4.analyze(root, shadow ? new ShadowSymTable() : new SymTable(),
+                       out);
+            out.flush();
+            r.status = OK;
+            r.diagnostics = print(d);
+            r.output = text.toString();
+            return r;
+        } finally {
+            ErrMsg.collectInto(null);
+        }
+    }
+
+    // the analyzer that has seen the last version of the named file
+    private static IncrementalAnalyzer analyzer(String name) {
+        synchronized (files) {
+            IncrementalAnalyzer a = files.get(name);
+            if (a == null) {
+                a = new IncrementalAnalyzer();
+                files.put(name, a);
+            }
+            return a;
+        }
+    }
+
+    private static void forget(String name) {
+        synchronized (files) {
+            files.remove(name);
+        }
+    }
+
+    // the messages in d, as P4 would print them
+    private static String print(Diagnostics d) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bytes);
+        d.print(ps);
+        return bytes.toString();
+    }
+
+    // the answer to one ANALYZE request
+    static class Result {
+        int status;
+        String diagnostics = "";
+        String output = "";
+    }
+
+    // reads a string of at most max bytes
+    static String readString(DataInputStream in, int max) throws IOException {
+        int n = in.readInt();
+        if (n < 0 || n > max) {
+            throw new IOException("bad string length " + n);
+        }
+        byte[] bytes = new byte[n];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
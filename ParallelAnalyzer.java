@@ -0,0 +1,199 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ParallelAnalyzer
+ *
+ * Name-analyzes a program in two phases so that the bodies of its
+ * functions can be analyzed on several threads at once.
+ *
+ * The first phase goes through the top-level declarations in order, on
+ * the calling thread, declaring each in the global scope, a
+ * ForkableSymTable: variables and tuple types are analyzed whole,
+ * functions only declared (see FctnDeclNode.declare), and a snapshot of
+ * the global scope is kept as each function is declared.  In the second
+ * phase the function bodies are handed out to the threads, each of which
+ * analyzes them with its own stack of local scopes over the function's
+ * snapshot (BodyScope).  A body sees only the global names declared by
+ * its own declaration or the ones before it, just as when the program is
+ * analyzed in order.
+ *
+ * Every declaration's messages are collected apart, and once both phases
+ * are done they are reported on the calling thread in the order of the
+ * declarations, so the messages, the symbols the identifiers get and so
+ * the output are the same as with nameAnalysis.
+ */
+class ParallelAnalyzer {
+    // helper threads, shared by all analyses; the calling thread helps too.
+    // Made once and never shut down, since with P4 -batch -threads other
+    // threads may be submitting to it at any time.
+    private static ExecutorService pool = null;
+
+    /**
+     * Name-analyzes root on the given number of threads.  The helper
+     * threads are made for the first call, so later calls should ask for
+     * no more threads than that one.
+     */
+    static void analyze(ProgramNode root, int threads) {
+        List<DeclNode> decls = root.getDeclList().getDecls();
+        int n = decls.size();
+        List<Diagnostics.Record>[] declared = newRecordLists(n);
+        List<Diagnostics.Record>[] bodies = newRecordLists(n);
+        Diagnostics caller = ErrMsg.collector();
+
+        // first phase: the global scope
+        ForkableSymTable global = new ForkableSymTable();
+        List<Integer> fctns = new ArrayList<Integer>();
+        PersistentSymTable[] snapshots = new PersistentSymTable[n];
+        try {
+            for (int i = 0; i < n; i++) {
+                Diagnostics d = new Diagnostics();
+                ErrMsg.collectInto(d);
+                DeclNode decl = decls.get(i);
+                if (decl instanceof FctnDeclNode) {
+                    ((FctnDeclNode) decl).declare(global);
+                    fctns.add(i);
+                    snapshots[i] = global.snapshot();
+                } else {
+                    decl.nameAnalysis(global);
+                }
+                declared[i] = d.records();
+            }
+        } finally {
+            ErrMsg.collectInto(caller);
+        }
+
+        // second phase: the function bodies
+        AtomicInteger next = new AtomicInteger();
+        Callable<Void> worker = new Callable<Void>() {
+            public Void call() {
+                analyzeBodies(decls, fctns, next, snapshots, bodies, null);
+                return null;
+            }
+        };
+        List<Future<Void>> helpers = new ArrayList<Future<Void>>();
+        int helping = Math.min(threads, fctns.size()) - 1;
+        if (helping > 0) {
+            ExecutorService p = pool(threads);
+            for (int t = 0; t < helping; t++) {
+                helpers.add(p.submit(worker));
+            }
+        }
+        analyzeBodies(decls, fctns, next, snapshots, bodies, caller);
+        for (Future<Void> f : helpers) {
+            try {
+                f.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(ex);
+            } catch (ExecutionException ex) {
+                throw new RuntimeException(ex.getCause());
+            }
+        }
+
+        // the messages, in the order of the declarations
+        for (int i = 0; i < n; i++) {
+            report(declared[i]);
+            report(bodies[i]);
+        }
+    }
+
+    // takes function bodies from fctns until there are none left, then
+    // gives the thread's messages back to restore
+    private static void analyzeBodies(List<DeclNode> decls, List<Integer> fctns,
+                                      AtomicInteger next,
+                                      PersistentSymTable[] snapshots,
+                                      List<Diagnostics.Record>[] bodies,
+                                      Diagnostics restore) {
+        BodyScope scope = new BodyScope();
+        try {
+            int k;
+            while ((k = next.getAndIncrement()) < fctns.size()) {
+                int i = fctns.get(k);
+                Diagnostics d = new Diagnostics();
+                ErrMsg.collectInto(d);
+                scope.globals = snapshots[i];
+                ((FctnDeclNode) decls.get(i)).bodyNameAnalysis(scope);
+                bodies[i] = d.records();
+            }
+        } finally {
+            ErrMsg.collectInto(restore);
+        }
+    }
+
+    private static void report(List<Diagnostics.Record> messages) {
+        if (messages == null) {
+            return;
+        }
+        for (Diagnostics.Record m : messages) {
+            if (m.severity == Diagnostics.ERROR) {
+                ErrMsg.fatal(m.lineNum, m.charNum, m.msg);
+            } else {
+                ErrMsg.warn(m.lineNum, m.charNum, m.msg);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Diagnostics.Record>[] newRecordLists(int n) {
+        return (List<Diagnostics.Record>[]) new List<?>[n];
+    }
+
+    // the helper pool, made the first time with threads - 1 daemon threads:
+    // a run analyzes every file on the same number of threads (P4
+    // -parallel), and a file with fewer functions just submits fewer
+    // helpers to it
+    private static synchronized ExecutorService pool(int threads) {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "name analysis");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * One thread's scopes for analyzing function bodies: its own local
+     * scopes over a snapshot of the global scope.  The bottom scope of
+     * the SymTable stands for the global one and is never added to.
+     */
+    private static class BodyScope extends SymTable {
+        PersistentSymTable globals;  // as the function being analyzed saw it
+        private int depth = 1;
+
+        public Sym tryAddDecl(String name, Sym sym)
+        throws EmptySymTableException {
+            if (depth == 1) {
+                throw new IllegalStateException("the global scope is frozen");
+            }
+            return super.tryAddDecl(name, sym);
+        }
+
+        public Sym lookupLocal(String name) throws EmptySymTableException {
+            if (depth == 1) {
+                return globals.lookupLocal(name);
+            }
+            return super.lookupLocal(name);
+        }
+
+        public Sym lookupGlobal(String name) throws EmptySymTableException {
+            Sym sym = super.lookupGlobal(name);
+            return sym != null ? sym : globals.lookupGlobal(name);
+        }
+
+        public void addScope() {
+            super.addScope();
+            depth++;
+        }
+
+        public void removeScope() throws EmptySymTableException {
+            super.removeScope();
+            depth--;
+        }
+    }
+}
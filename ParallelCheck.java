@@ -0,0 +1,162 @@
+import java.io.*;
+import java.util.*;
+
+/****
+ * Check of ParallelAnalyzer against nameAnalysis.
+ *
+ * Each program is parsed twice, and one copy is analyzed and unparsed
+ * with nameAnalysis, the other with ParallelAnalyzer; the two must
+ * report the same errors in the same order and, if there are none, write
+ * the same text.  The programs are the files named on the command line
+ * plus generated ones, each of which is also checked with some of its
+ * identifiers renamed (see FlatCheck.renamed) and with its declarations
+ * in reverse order, so that function bodies use globals declared after
+ * them.
+ *
+ * Then the time to analyze the largest generated program (or the last
+ * file) is printed for 1 thread and for the number given.
+ *
+ * Usage: java ParallelCheck [-threads N] [-programs N] [-funcs N] [-seed N]
+ *                           [file ...]
+ *   -threads N    threads for ParallelAnalyzer   (default: the number of
+ *                 processors, at least 2)
+ *   -programs N   number of generated programs             (default 5)
+ *   -funcs N      functions in the largest of them         (default 500)
+ *   -seed N       seed for the programs and renamings      (default 1)
+ * Exits with status 1 if any check failed.
+ ****/
+
+public class ParallelCheck {
+    private static final int REPEAT = 10;      // timed runs
+
+    public static void main(String[] args) throws Exception {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        int programs = 5;
+        int funcs = 500;
+        long seed = 1;
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-programs") && i + 1 < args.length) {
+                programs = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-funcs") && i + 1 < args.length) {
+                funcs = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+
+        Random rand = new Random(seed);
+        int checked = 0;
+        int failed = 0;
+        String last = null;
+        for (String name : files) {
+            last = ScanCheck.read(name);
+            checked++;
+            if (!check(name, last, threads)) {
+                failed++;
+            }
+        }
+        for (int i = 0; i < programs; i++) {
+            GenBase gen = new GenBase();
+            gen.seed = seed + i;
+            if (i == programs - 1) {
+                gen.funcs = funcs;
+            }
+            String src = gen.generate();
+            String[] versions = { src, FlatCheck.renamed(src, rand),
+                                  reversed(src) };
+            String[] kinds = { "", " renamed", " reversed" };
+            for (int k = 0; k < versions.length; k++) {
+                checked++;
+                if (!check("generated program " + i + kinds[k], versions[k],
+                           threads)) {
+                    failed++;
+                }
+            }
+            if (files.isEmpty()) {
+                last = src;
+            }
+        }
+        System.out.println(checked + " programs, " + failed + " failed");
+        if (last != null) {
+            time(last, threads);
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    // src with its top-level declarations in reverse order
+    static String reversed(String src) {
+        List<int[]> spans = IncrementalAnalyzer.split(src);
+        StringBuilder sb = new StringBuilder(src.length() + spans.size());
+        for (int i = spans.size() - 1; i >= 0; i--) {
+            int[] span = spans.get(i);
+            sb.append(src, span[0], span[1]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    static boolean check(String name, String src, int threads) {
+        String sequential = analyze(src, 1);
+        String parallel = analyze(src, threads);
+        if (sequential == null) {
+            System.out.println(name + ": does not parse, skipped");
+            return true;
+        }
+        if (!sequential.equals(parallel)) {
+            System.out.println(name + ": ParallelAnalyzer gives different" +
+                               " results\n--- nameAnalysis\n" + sequential +
+                               "--- ParallelAnalyzer\n" + parallel);
+            return false;
+        }
+        return true;
+    }
+
+    // the errors reported by analyzing src, and its unparsed text if
+    // there were none, or null if it doesn't parse
+    private static String analyze(String src, int threads) {
+        ProgramNode root = ScanCheck.parse(src);
+        if (root == null) {
+            return null;
+        }
+        int saved = P4.parallelism;
+        try {
+            P4.parallelism = threads;
+            return ScanCheck.analyze(root);
+        } finally {
+            P4.parallelism = saved;
+        }
+    }
+
+    // prints the best time to name-analyze src on 1 thread and on threads
+    static void time(String src, int threads) throws Exception {
+        ProgramNode root = ScanCheck.parse(src);
+        int decls = root.getDeclList().getDecls().size();
+        long one = Long.MAX_VALUE;
+        long many = Long.MAX_VALUE;
+        ErrMsg.collectInto(new Diagnostics());
+        try {
+            for (int i = 0; i < REPEAT; i++) {
+                long t0 = System.nanoTime();
+                root.nameAnalysis(new SymTable());
+                long t1 = System.nanoTime();
+                ParallelAnalyzer.analyze(root, threads);
+                long t2 = System.nanoTime();
+                one = Math.min(one, t1 - t0);
+                many = Math.min(many, t2 - t1);
+            }
+        } finally {
+            ErrMsg.collectInto(null);
+        }
+        System.out.printf("%d chars, %d declarations: nameAnalysis %.2f ms," +
+                          " ParallelAnalyzer on %d threads %.2f ms" +
+                          " (%d processors)%n", src.length(), decls,
+                          one / 1e6, threads, many / 1e6,
+                          Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -0,0 +1,221 @@
+import java.util.*;
+
+/****
+ * Check of PersistentMap and PersistentSymTable.
+ *
+ * Random operations are applied to a PersistentSymTable and to a SymTable
+ * side by side, and every lookup must give the same answer.  Snapshots of
+ * the persistent table are kept along the way together with what every
+ * name was bound to then; at the end (and now and then on the way) each
+ * snapshot must still give exactly those bindings, also after tables
+ * started from the snapshots (ForkableSymTables) have been added to.
+ * The names are drawn from a pool that includes strings with equal hash
+ * codes, so that the maps have collision nodes.
+ *
+ * Then the time to take a snapshot of a large table is printed, next to
+ * the time to copy the same declarations out of a SymTable.
+ *
+ * Usage: java PersistentCheck [-ops N] [-seed N]
+ *   -ops N    operations per run    (default 100000)
+ *   -seed N   random seed           (default 1)
+ * Exits with status 1 if any check failed.
+ ****/
+
+public class PersistentCheck {
+    // "Aa" and "BB" have the same hash code, and so do all strings made
+    // of them with the same length
+    private static final String[] COLLIDING = { "AaAa", "AaBB", "BBAa", "BBBB" };
+
+    public static void main(String[] args) throws Exception {
+        int ops = 100000;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-ops") && i + 1 < args.length) {
+                ops = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                System.err.println("unknown argument " + args[i]);
+                System.exit(-1);
+            }
+        }
+
+        int failed = 0;
+        for (int names : new int[] { 8, 200, 5000 }) {
+            String problem = run(new Random(seed + names), ops, names);
+            if (problem != null) {
+                System.out.println(names + " names: " + problem);
+                failed++;
+            }
+        }
+        System.out.println("3 runs, " + failed + " failed");
+        time();
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    // one run of ops random operations on names drawn from a pool of the
+    // given size; returns what went wrong, or null
+    static String run(Random rand, int ops, int names) throws Exception {
+        List<String> pool = new ArrayList<String>(Arrays.asList(COLLIDING));
+        for (int i = pool.size(); i < names; i++) {
+            pool.add("n" + i);
+        }
+        PersistentSymTable table = PersistentSymTable.EMPTY;
+        SymTable model = new SymTable();
+        List<PersistentSymTable> snapshots = new ArrayList<PersistentSymTable>();
+        List<String> seen = new ArrayList<String>();
+
+        for (int op = 0; op < ops; op++) {
+            String name = pool.get(rand.nextInt(pool.size()));
+            int what = rand.nextInt(100);
+            if (what < 40) {
+                Sym sym = new Sym("s" + op);
+                boolean dup = model.tryAddDecl(name, sym) != null;
+                try {
+                    table = table.addDecl(name, sym);
+                    if (dup) {
+                        return "addDecl of " + name + " was not a duplicate";
+                    }
+                } catch (DuplicateSymNameException ex) {
+                    if (!dup) {
+                        return "addDecl of " + name + " was a duplicate";
+                    }
+                }
+            } else if (what < 48 && table.depth() < 10) {
+                table = table.addScope();
+                model.addScope();
+            } else if (what < 55 && table.depth() > 1) {
+                table = table.removeScope();
+                model.removeScope();
+            } else if (what < 97 || rand.nextInt(30) != 0) {
+                if (table.lookupLocal(name) != model.lookupLocal(name) ||
+                    table.lookupGlobal(name) != model.lookupGlobal(name)) {
+                    return "lookup of " + name + " differs after " + op + " ops";
+                }
+            } else {
+                snapshots.add(table);
+                seen.add(state(model, pool));
+            }
+            if (op % 10000 == 0 && changed(snapshots, seen, pool) >= 0) {
+                return "a snapshot changed after " + op + " ops";
+            }
+        }
+        int i = changed(snapshots, seen, pool);
+        if (i >= 0) {
+            return "snapshot " + i + " changed";
+        }
+        return forks(rand, pool, snapshots, seen);
+    }
+
+    // what every name in pool is bound to in table, globally and locally
+    private static String state(SymTable table, List<String> pool)
+        throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        for (String name : pool) {
+            sb.append(System.identityHashCode(table.lookupGlobal(name)))
+              .append(' ')
+              .append(System.identityHashCode(table.lookupLocal(name)))
+              .append(' ');
+        }
+        return sb.toString();
+    }
+
+    // the first snapshot whose state isn't what was seen when it was
+    // taken, or -1
+    private static int changed(List<PersistentSymTable> snapshots,
+                               List<String> seen, List<String> pool)
+        throws Exception
+    {
+        for (int i = 0; i < snapshots.size(); i++) {
+            if (!state(new ForkableSymTable(snapshots.get(i)), pool)
+                    .equals(seen.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // forks a ForkableSymTable from each snapshot and adds to it, in a
+    // new scope and in the snapshot's own innermost one; the fork must
+    // see what it added and the snapshot must be left alone
+    private static String forks(Random rand, List<String> pool,
+                                List<PersistentSymTable> snapshots,
+                                List<String> seen)
+        throws Exception
+    {
+        for (int i = 0; i < snapshots.size(); i++) {
+            PersistentSymTable snapshot = snapshots.get(i);
+            ForkableSymTable fork = new ForkableSymTable(snapshot);
+            if (rand.nextBoolean()) {
+                fork.addScope();
+            }
+            Map<String, Sym> local =
+                new LinkedHashMap<String, Sym>(fork.localDecls());
+            for (int k = 0; k < 20; k++) {
+                String name = pool.get(rand.nextInt(pool.size()));
+                Sym sym = new Sym("f" + k);
+                boolean dup = fork.tryAddDecl(name, sym) != null;
+                if (dup != local.containsKey(name)) {
+                    return "fork " + i + " disagrees about " + name;
+                }
+                if (!dup) {
+                    local.put(name, sym);
+                }
+                if (fork.lookupGlobal(name) != local.get(name)) {
+                    return "fork " + i + " lost " + name;
+                }
+            }
+            if (!fork.localDecls().equals(local)) {
+                return "fork " + i + " holds the wrong declarations";
+            }
+        }
+        int i = changed(snapshots, seen, pool);
+        return i < 0 ? null : "forking changed snapshot " + i;
+    }
+
+    // prints the time to snapshot a table of many globals and to copy
+    // them, and the time a lookup takes in each
+    static void time() throws Exception {
+        int n = 100000;
+        String[] names = new String[n];
+        ForkableSymTable fork = new ForkableSymTable();
+        SymTable table = new SymTable();
+        for (int i = 0; i < n; i++) {
+            Sym sym = new Sym("integer");
+            names[i] = "g" + i;
+            fork.tryAddDecl(names[i], sym);
+            table.tryAddDecl(names[i], sym);
+        }
+        long snap = Long.MAX_VALUE;
+        long copy = Long.MAX_VALUE;
+        long persistent = Long.MAX_VALUE;
+        long hashed = Long.MAX_VALUE;
+        int sink = 0;
+        for (int r = 0; r < 20; r++) {
+            long t0 = System.nanoTime();
+            sink += fork.snapshot().depth();
+            long t1 = System.nanoTime();
+            sink += new HashMap<String, Sym>(table.localDecls()).size();
+            long t2 = System.nanoTime();
+            for (String name : names) {
+                sink += fork.lookupGlobal(name) == null ? 0 : 1;
+            }
+            long t3 = System.nanoTime();
+            for (String name : names) {
+                sink += table.lookupGlobal(name) == null ? 0 : 1;
+            }
+            long t4 = System.nanoTime();
+            snap = Math.min(snap, t1 - t0);
+            copy = Math.min(copy, t2 - t1);
+            persistent = Math.min(persistent, t3 - t2);
+            hashed = Math.min(hashed, t4 - t3);
+        }
+        System.out.printf("%d globals: snapshot %.4f ms, copy %.3f ms;" +
+                          " lookup %.1f ns, in a SymTable %.1f ns%s%n",
+                          n, snap / 1e6, copy / 1e6, persistent / (double) n,
+                          hashed / (double) n, sink == 0 ? "!" : "");
+    }
+}
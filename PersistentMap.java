@@ -0,0 +1,265 @@
+import java.util.*;
+
+/**
+ * PersistentMap
+ *
+ * An immutable hash map: put and remove return a new map and leave this
+ * one as it was.  It is a hash array mapped trie, a tree of nodes with
+ * up to 32 branches, each level picking its branch by the next five bits
+ * of the key's hash, so the new map copies only the nodes on the path to
+ * the key (at most seven, each of at most 32 entries) and shares all the
+ * others with the old one.  Keys whose hashes are equal all through end
+ * up together in one collision node.
+ *
+ * Keys and values must not be null.
+ */
+final class PersistentMap<K, V> {
+    @SuppressWarnings("rawtypes")
+    private static final PersistentMap EMPTY = new PersistentMap(null, 0);
+
+    private final Node root;     // null if empty
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value of key, or null if it has none.
+     */
+    @SuppressWarnings("unchecked")
+    V get(K key) {
+        Node node = root;
+        int hash = key.hashCode();
+        int shift = 0;
+        while (node != null) {
+            if (node.bitmap == 0) {
+                return (V) node.collisionGet(hash, key);
+            }
+            int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            int i = 2 * node.index(bit);
+            Object k = node.array[i];
+            if (k != null) {
+                return key.equals(k) ? (V) node.array[i + 1] : null;
+            }
+            node = (Node) node.array[i + 1];
+            shift += 5;
+        }
+        return null;
+    }
+
+    /**
+     * Returns this map with key mapped to value.
+     */
+    PersistentMap<K, V> put(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException();
+        }
+        int hash = key.hashCode();
+        boolean[] added = new boolean[1];
+        Node node = root == null
+            ? new Node(bit(hash, 0), new Object[] { key, value })
+            : root.put(0, hash, key, value, added);
+        if (root == null) {
+            added[0] = true;
+        }
+        return node == root ? this
+                            : new PersistentMap<K, V>(node, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns this map without key.
+     */
+    PersistentMap<K, V> remove(K key) {
+        if (root == null) {
+            return this;
+        }
+        Node node = root.remove(0, key.hashCode(), key);
+        if (node == root) {
+            return this;
+        }
+        return node == null ? PersistentMap.<K, V>empty()
+                            : new PersistentMap<K, V>(node, size - 1);
+    }
+
+    // the bit of a node's bitmap that selects hash's branch at shift
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    /**
+     * A node of the trie.  A bitmap node has a bit set in bitmap for each
+     * branch in use; array holds a key and value for each, in the order of
+     * the bits, or null and the subtree when several keys share the
+     * branch.  A collision node has bitmap 0 and holds keys and values
+     * whose hashes are all hash.
+     */
+    private static final class Node {
+        final int bitmap;
+        final Object[] array;
+        final int hash;          // collision nodes only
+
+        Node(int bitmap, Object[] array) {
+            this(bitmap, array, 0);
+        }
+
+        Node(int bitmap, Object[] array, int hash) {
+            this.bitmap = bitmap;
+            this.array = array;
+            this.hash = hash;
+        }
+
+        // the position of bit's entry among the entries of the node
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        Object collisionGet(int hash, Object key) {
+            if (hash != this.hash) {
+                return null;
+            }
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return array[i + 1];
+                }
+            }
+            return null;
+        }
+
+        // this node with key mapped to value, or this node if it already
+        // was; sets added[0] if key is new
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (bitmap == 0) {
+                return collisionPut(shift, hash, key, value, added);
+            }
+            int bit = bit(hash, shift);
+            int i = 2 * index(bit);
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                Object[] a = new Object[array.length + 2];
+                System.arraycopy(array, 0, a, 0, i);
+                a[i] = key;
+                a[i + 1] = value;
+                System.arraycopy(array, i, a, i + 2, array.length - i);
+                return new Node(bitmap | bit, a);
+            }
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node sub = ((Node) v).put(shift + 5, hash, key, value, added);
+                return sub == v ? this : with(i + 1, sub);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : with(i + 1, value);
+            }
+            added[0] = true;
+            Node sub = pair(shift + 5, k.hashCode(), k, v, hash, key, value);
+            Node node = with(i + 1, sub);
+            node.array[i] = null;
+            return node;
+        }
+
+        private Node collisionPut(int shift, int hash, Object key, Object value,
+                                  boolean[] added) {
+            if (hash != this.hash) {
+                // push this node down a level, under a bitmap node
+                Node node = new Node(bit(this.hash, shift),
+                                     new Object[] { null, this });
+                return node.put(shift, hash, key, value, added);
+            }
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return array[i + 1] == value ? this : with(i + 1, value);
+                }
+            }
+            added[0] = true;
+            Object[] a = Arrays.copyOf(array, array.length + 2);
+            a[array.length] = key;
+            a[array.length + 1] = value;
+            return new Node(0, a, hash);
+        }
+
+        // a node holding two keys, at shift
+        private static Node pair(int shift, int hash1, Object key1, Object value1,
+                                 int hash2, Object key2, Object value2) {
+            if (hash1 == hash2) {
+                return new Node(0, new Object[] { key1, value1, key2, value2 },
+                                hash1);
+            }
+            int bit1 = bit(hash1, shift);
+            int bit2 = bit(hash2, shift);
+            if (bit1 == bit2) {
+                Node sub = pair(shift + 5, hash1, key1, value1,
+                                hash2, key2, value2);
+                return new Node(bit1, new Object[] { null, sub });
+            }
+            Object[] a = Integer.compareUnsigned(bit1, bit2) < 0
+                ? new Object[] { key1, value1, key2, value2 }
+                : new Object[] { key2, value2, key1, value1 };
+            return new Node(bit1 | bit2, a);
+        }
+
+        // this node without key: itself if key isn't in it, null if key
+        // was all it held
+        Node remove(int shift, int hash, Object key) {
+            if (bitmap == 0) {
+                if (hash != this.hash) {
+                    return this;
+                }
+                for (int i = 0; i < array.length; i += 2) {
+                    if (key.equals(array[i])) {
+                        return array.length == 2 ? null
+                                                 : new Node(0, without(i), hash);
+                    }
+                }
+                return this;
+            }
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = 2 * index(bit);
+            Object k = array[i];
+            if (k == null) {
+                Node sub = (Node) array[i + 1];
+                Node rest = sub.remove(shift + 5, hash, key);
+                if (rest == sub) {
+                    return this;
+                } else if (rest != null) {
+                    return with(i + 1, rest);
+                }
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            return bitmap == bit ? null : new Node(bitmap & ~bit, without(i));
+        }
+
+        // a copy of this node with array[i] replaced
+        private Node with(int i, Object x) {
+            Object[] a = array.clone();
+            a[i] = x;
+            return new Node(bitmap, a, hash);
+        }
+
+        // array without the entry at i
+        private Object[] without(int i) {
+            Object[] a = new Object[array.length - 2];
+            System.arraycopy(array, 0, a, 0, i);
+            System.arraycopy(array, i + 2, a, i, array.length - i - 2);
+            return a;
+        }
+    }
+}
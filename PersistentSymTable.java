@@ -0,0 +1,151 @@
+import java.util.*;
+
+// An immutable symbol table: addScope, addDecl and removeScope return a
+// new table and leave this one as it was, so keeping a snapshot of a table
+// costs nothing but the reference, and a snapshot can be used by several
+// threads at once or changed down different paths.
+//
+// It is kept like ShadowSymTable, as one name -> entry map whose entries
+// remember their scope depth and the entry they shadow, but the map is a
+// PersistentMap, so a new version shares all but a few nodes with the old
+// one.  Each scope keeps the list of names declared in it, for
+// removeScope to put the shadowed entries back.
+final class PersistentSymTable {
+	// a table with one, empty, scope, like a new SymTable
+	static final PersistentSymTable EMPTY =
+		new PersistentSymTable(PersistentMap.<String, Entry>empty(), null, 0).addScope();
+
+	private final PersistentMap<String, Entry> table;
+	private final Scope scope;       // the innermost scope, or null
+	private final int depth;
+
+	private PersistentSymTable(PersistentMap<String, Entry> table, Scope scope, int depth) {
+		this.table = table;
+		this.scope = scope;
+		this.depth = depth;
+	}
+
+	public int depth() {
+		return depth;
+	}
+
+	// Returns this table with sym declared as name in the innermost scope.
+	public PersistentSymTable addDecl(String name, Sym sym)
+	throws DuplicateSymNameException, EmptySymTableException {
+		if (name == null || sym == null)		throw new IllegalArgumentException();
+
+		if (depth == 0)
+			throw new EmptySymTableException();
+
+		Entry old = table.get(name);
+		if (old != null && old.depth == depth)
+			throw new DuplicateSymNameException();
+
+		return new PersistentSymTable(table.put(name, new Entry(sym, depth, old)),
+		                              new Scope(new Names(name, scope.declared), scope.outer),
+		                              depth);
+	}
+
+	public PersistentSymTable addScope() {
+		return new PersistentSymTable(table, new Scope(null, scope), depth + 1);
+	}
+
+	public Sym lookupLocal(String name)
+	throws EmptySymTableException {
+		if (depth == 0)
+			throw new EmptySymTableException();
+
+		Entry e = table.get(name);
+		if (e == null || e.depth != depth)
+			return null;
+		return e.sym;
+	}
+
+	public Sym lookupGlobal(String name)
+	throws EmptySymTableException {
+		if (depth == 0)
+			throw new EmptySymTableException();
+
+		Entry e = table.get(name);
+		return e == null ? null : e.sym;
+	}
+
+	// The declarations of the innermost scope, in declaration order.
+	public Map<String, Sym> localDecls()
+	throws EmptySymTableException {
+		if (depth == 0)
+			throw new EmptySymTableException();
+
+		List<String> names = new ArrayList<String>();
+		for (Names n = scope.declared; n != null; n = n.next)
+			names.add(n.name);
+		Map<String, Sym> symTab = new LinkedHashMap<String, Sym>();
+		for (int i = names.size() - 1; i >= 0; i--)
+			symTab.put(names.get(i), table.get(names.get(i)).sym);
+		return Collections.unmodifiableMap(symTab);
+	}
+
+	public PersistentSymTable removeScope()
+	throws EmptySymTableException {
+		if (depth == 0)
+			throw new EmptySymTableException();
+
+		PersistentMap<String, Entry> t = table;
+		for (Names n = scope.declared; n != null; n = n.next) {
+			Entry e = t.get(n.name);
+			if (e.shadowed == null)
+				t = t.remove(n.name);
+			else
+				t = t.put(n.name, e.shadowed);
+		}
+		return new PersistentSymTable(t, scope.outer, depth - 1);
+	}
+
+	public void print() {
+		System.out.print("\n++++ SYMBOL TABLE\n");
+		int d = depth;
+		for (Scope s = scope; s != null; s = s.outer, d--) {
+			HashMap<String, Sym> symTab = new HashMap<String, Sym>();
+			for (Names n = s.declared; n != null; n = n.next) {
+				Entry e = table.get(n.name);
+				while (e.depth != d)
+					e = e.shadowed;
+				symTab.put(n.name, e.sym);
+			}
+			System.out.println(symTab.toString());
+		}
+		System.out.println("\n++++ END TABLE");
+	}
+
+	private static final class Entry {
+		final Sym sym;
+		final int depth;
+		final Entry shadowed;   // declaration of the same name in an outer scope
+
+		Entry(Sym sym, int depth, Entry shadowed) {
+			this.sym = sym;
+			this.depth = depth;
+			this.shadowed = shadowed;
+		}
+	}
+
+	private static final class Scope {
+		final Names declared;   // most recent first
+		final Scope outer;
+
+		Scope(Names declared, Scope outer) {
+			this.declared = declared;
+			this.outer = outer;
+		}
+	}
+
+	private static final class Names {
+		final String name;
+		final Names next;
+
+		Names(String name, Names next) {
+			this.name = name;
+			this.next = next;
+		}
+	}
+}
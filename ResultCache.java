@@ -0,0 +1,278 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.*;
+import java.util.*;
+
+/**
+ * ResultCache
+ *
+ * A directory of analysis results, so that a build that analyzes the
+ * same unchanged files again can skip scanning, parsing and name analysis
+ * for them.  A result is the diagnostics reported for a file and the
+ * program it unparsed to (empty if there were errors); results are only
+ * kept for files that parsed.
+ *
+ * Results are keyed by the SHA-256 hash of VERSION, the scanner used,
+ * the default charset (which the file is decoded with) and the bytes of
+ * the file, so a file is only ever matched by the same text analyzed by
+ * the same analyzer.  Each is a record file named by its key, in a
+ * subdirectory named by the key's first two hex digits:
+ *   magic, key, number of messages,
+ *   for each message: severity, line, column, text,
+ *   length of the unparsed program, the program in UTF-8
+ * (integers 4 bytes and strings as DataOutputStream.writeUTF writes them).
+ *
+ * Several processes can share a cache.  A record is written to a
+ * temporary file in its subdirectory and then renamed into place, so a
+ * reader sees a whole record or none; a record that is unreadable anyway
+ * is treated as missing and removed.  When the records this process
+ * knows of pass the size limit, the least recently used ones (by
+ * modification time, which a hit updates) are removed until the cache is
+ * down to three quarters of it.  A record removed while another process
+ * reads it is just a miss for that process.
+ */
+class ResultCache {
+    // change this whenever the scanner, parser, name analysis or unparse
+    // change what they report or write, so older results are not reused
+    static final String VERSION = "P4 results 2";
+
+    private static final int MAGIC = 0x50345243;      // "P4RC"
+    private static final String SUFFIX = ".rec";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // temporary files older than this were left by a process that died
+    private static final long STALE_MILLIS = 60 * 60 * 1000;
+
+    private Path dir;
+    private long maxBytes;
+    private long size = -1;        // bytes in records; -1 until counted
+
+    ResultCache(String dir, long maxBytes) throws IOException {
+        this.dir = Paths.get(dir);
+        this.maxBytes = maxBytes;
+        Files.createDirectories(this.dir);
+    }
+
+    /**
+     * Returns the key of the results for a file with the given contents,
+     * scanned by the named scanner.
+     */
+    static String key(byte[] src, String scanner) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);   // every JVM has SHA-256
+        }
+        for (String part : new String[] { VERSION, scanner,
+                                          Charset.defaultCharset().name() }) {
+            md.update(part.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+        }
+        byte[] hash = md.digest(src);
+        StringBuilder sb = new StringBuilder(2 * hash.length);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+              .append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the results stored under key, or null if there are none.
+     */
+    Entry get(String key) {
+        Path p = path(key);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(p);
+        } catch (IOException ex) {
+            return null;
+        }
+        Entry e;
+        try {
+            e = decode(key, bytes);
+        } catch (IOException ex) {
+            delete(p);
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(p, FileTime.fromMillis(
+                System.currentTimeMillis()));
+        } catch (IOException ex) {
+            // removed meanwhile; the results are still good
+        }
+        return e;
+    }
+
+    /**
+     * Stores results under key.  A result that can't be stored is just
+     * not cached.
+     */
+    void put(String key, Entry e) {
+        byte[] bytes;
+        try {
+            bytes = encode(key, e);
+        } catch (IOException ex) {
+            return;        // a message too long for writeUTF
+        }
+        Path p = path(key);
+        Path temp = null;
+        try {
+            Files.createDirectories(p.getParent());
+            temp = Files.createTempFile(p.getParent(), key, TEMP_SUFFIX);
+            Files.write(temp, bytes);
+            try {
+                Files.move(temp, p, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, p, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } catch (IOException ex) {
+            return;
+        } finally {
+            if (temp != null) {
+                delete(temp);
+            }
+        }
+        added(bytes.length);
+    }
+
+    // counts a new record, and makes room if the cache is over its limit
+    private synchronized void added(long bytes) {
+        if (size < 0) {
+            size = evict(Long.MAX_VALUE);
+        } else {
+            size += bytes;
+        }
+        if (size > maxBytes) {
+            size = evict(maxBytes / 4 * 3);
+        }
+    }
+
+    /**
+     * Removes the least recently used records until at most target bytes
+     * are left, and any stale temporary files.  Returns the bytes left.
+     */
+    private long evict(long target) {
+        List<Object[]> records = new ArrayList<Object[]>();
+        long total = 0;
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> subdirs = Files.newDirectoryStream(dir)) {
+            for (Path sub : subdirs) {
+                if (!Files.isDirectory(sub)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(sub)) {
+                    for (Path f : files) {
+                        String name = f.getFileName().toString();
+                        long time;
+                        long length;
+                        try {
+                            time = Files.getLastModifiedTime(f).toMillis();
+                            length = Files.size(f);
+                        } catch (IOException ex) {
+                            continue;      // removed by another process
+                        }
+                        if (name.endsWith(SUFFIX)) {
+                            records.add(new Object[] { f, time, length });
+                            total += length;
+                        } else if (name.endsWith(TEMP_SUFFIX) &&
+                                   now - time > STALE_MILLIS) {
+                            delete(f);
+                        }
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            return total;
+        }
+        if (total <= target) {
+            return total;
+        }
+        records.sort(new Comparator<Object[]>() {
+            public int compare(Object[] a, Object[] b) {
+                return Long.compare((Long) a[1], (Long) b[1]);
+            }
+        });
+        for (Object[] r : records) {
+            if (total <= target) {
+                break;
+            }
+            delete((Path) r[0]);
+            total -= (Long) r[2];
+        }
+        return total;
+    }
+
+    private Path path(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + SUFFIX);
+    }
+
+    private static void delete(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException ex) {
+            // another process may have it open or have removed it
+        }
+    }
+
+    private static byte[] encode(String key, Entry e) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeUTF(key);
+        out.writeInt(e.messages.size());
+        for (Diagnostics.Record m : e.messages) {
+            out.writeByte(m.severity);
+            out.writeInt(m.lineNum);
+            out.writeInt(m.charNum);
+            out.writeUTF(m.msg);
+        }
+        byte[] output = e.output.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(output.length);
+        out.write(output);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(String key, byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC || !in.readUTF().equals(key)) {
+            throw new IOException("not a record for " + key);
+        }
+        int n = in.readInt();
+        if (n < 0 || n > bytes.length) {
+            throw new IOException("bad message count " + n);
+        }
+        List<Diagnostics.Record> messages = new ArrayList<Diagnostics.Record>(n);
+        for (int i = 0; i < n; i++) {
+            int severity = in.readByte();
+            int lineNum = in.readInt();
+            int charNum = in.readInt();
+            messages.add(new Diagnostics.Record(severity, lineNum, charNum,
+                                                in.readUTF()));
+        }
+        int length = in.readInt();
+        if (length < 0 || length != in.available()) {
+            throw new IOException("bad output length " + length);
+        }
+        byte[] output = new byte[length];
+        in.readFully(output);
+        return new Entry(messages, new String(output, StandardCharsets.UTF_8));
+    }
+
+    // the results of analyzing one file
+    static class Entry {
+        List<Diagnostics.Record> messages;
+        String output;
+
+        Entry(List<Diagnostics.Record> messages, String output) {
+            this.messages = messages;
+            this.output = output;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import java_cup.runtime.*;
+
+/**
+ * ReusableParser
+ *
+ * A parser that can parse one program after another.  The CUP-generated
+ * parser creates a new action object every time parse() is called; this
+ * one creates it once and keeps it, and keeps its parse stack, which
+ * parse() empties but doesn't shrink, so after the first few files no
+ * per-file setup is left but pointing the parser at the next scanner.
+ *
+ * A ReusableParser parses one program at a time; P4 keeps one per thread.
+ */
+class ReusableParser extends parser {
+    ReusableParser() {
+        super();
+    }
+
+    /**
+     * Makes the next parse() read its tokens from s.
+     */
+    void reset(Scanner s, boolean exitOnError) {
+        setScanner(s);
+        this.exitOnError = exitOnError;
+    }
+
+    /**
+     * Drops the references to the last scanner and token, and the parse
+     * stack, which still holds the program after an accept, so a parser
+     * waiting for its next program doesn't keep the last one alive.
+     */
+    void release() {
+        setScanner(null);
+        cur_token = null;
+        stack.removeAllElements();
+    }
+
+    protected void init_actions() {
+        if (action_obj == null) {
+            super.init_actions();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.*;
+import java.util.*;
+import java_cup.runtime.Symbol;
+
+/****
+ * Differential check of BaseScanner against the JLex-generated Yylex.
+ *
+ * Each input is scanned by both scanners and the results are compared:
+ * the sequence of tokens (kind, position and value), the errors and
+ * warnings reported, and the error thrown, if any.  One more Yylex and
+ * BaseScanner are reset and reused for every input, and their results
+ * must match as well, so whatever reset leaves behind from the previous
+ * input doesn't change how the next one is scanned.  The inputs are the
+ * files named on the command line plus a number of random ones built from
+ * fragments of base programs: keywords, identifiers, literals (including
+ * broken and oversized ones), operators, comments, whitespace, line
+ * breaks and arbitrary ASCII characters.
+ *
+ * Usage: java ScanCheck [-fuzz N] [-seed N] [file ...]
+ *   -fuzz N   number of random inputs                (default 2000)
+ *   -seed N   seed for the random inputs             (default 1)
+ * Prints the first difference for each input that differs and exits with
+ * status 1 if there was any.
+ ****/
+
+public class ScanCheck {
+    public static void main(String[] args) throws IOException {
+        int fuzz = 2000;
+        long seed = 1;
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-fuzz") && i + 1 < args.length) {
+                fuzz = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+
+        int failed = 0;
+        for (String name : files) {
+            if (!check(name, read(name))) {
+                failed++;
+            }
+        }
+        Random rand = new Random(seed);
+        for (int i = 0; i < fuzz; i++) {
+            if (!check("random input " + i, randomInput(rand))) {
+                failed++;
+            }
+        }
+        int total = files.size() + fuzz;
+        System.out.println(total + " inputs, " + failed + " differ");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Scans src with both scanners; prints the first difference and
+     * returns false if the results differ.
+     */
+    static boolean check(String name, String src) {
+        List<String> expected = scan(new Yylex(new StringReader(src)));
+        reusedLex.reset(new StringReader(src));
+        reusedHand.reset(new StringReader(src));
+        return same(name, src, expected, "BaseScanner",
+                    scan(new BaseScanner(new StringReader(src)))) &&
+               same(name, src, expected, "reset Yylex", scan(reusedLex)) &&
+               same(name, src, expected, "reset BaseScanner",
+                    scan(reusedHand));
+    }
+
+    private static Yylex reusedLex = new Yylex(new StringReader(""));
+    private static BaseScanner reusedHand =
+        new BaseScanner(new StringReader(""));
+
+    // compares the results of a scanner with those of a new Yylex
+    private static boolean same(String name, String src, List<String> expected,
+                                String scanner, List<String> actual) {
+        int n = Math.min(expected.size(), actual.size());
+        int i = 0;
+        while (i < n && expected.get(i).equals(actual.get(i))) {
+            i++;
+        }
+        if (i == n && expected.size() == actual.size()) {
+            return true;
+        }
+        System.out.println(name + " differs at result " + i + ":");
+        System.out.println("  Yylex: " +
+                           (i < expected.size() ? expected.get(i) : "(end)"));
+        System.out.println("  " + scanner + ": " +
+                           (i < actual.size() ? actual.get(i) : "(end)"));
+        if (src.length() <= 200) {
+            System.out.println("  input: " + escape(src));
+        }
+        return false;
+    }
+
+    /**
+     * Returns a description of each token the scanner returns and each
+     * message it reports, in order, ending with EOF or the error thrown.
+     */
+    static List<String> scan(java_cup.runtime.Scanner s) {
+        List<String> out = new ArrayList<String>();
+        Diagnostics d = new Diagnostics();
+        ErrMsg.collectInto(d);
+        try {
+            while (true) {
+                Symbol tok = s.next_token();
+                for (Diagnostics.Record r : d.records()) {
+                    out.add(r.toString());
+                }
+                d.records().clear();
+                out.add(describe(tok));
+                if (tok.sym == sym.EOF) {
+                    break;
+                }
+            }
+        } catch (Throwable ex) {
+            for (Diagnostics.Record r : d.records()) {
+                out.add(r.toString());
+            }
+            out.add("thrown " + ex);
+        } finally {
+            ErrMsg.collectInto(null);
+        }
+        return out;
+    }
+
+    static String describe(Symbol tok) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("token ").append(tok.sym);
+        if (tok.value instanceof TokenVal) {
+            TokenVal tv = (TokenVal) tok.value;
+            sb.append(" at ").append(tv.lineNum).append(':').append(tv.charNum);
+            if (tv instanceof IdTokenVal) {
+                sb.append(" id ").append(((IdTokenVal) tv).idVal);
+            } else if (tv instanceof IntLitTokenVal) {
+                sb.append(" int ").append(((IntLitTokenVal) tv).intVal);
+            } else if (tv instanceof StrLitTokenVal) {
+                sb.append(" str ").append(escape(((StrLitTokenVal) tv).strVal));
+            }
+        } else if (tok.sym != sym.EOF) {
+            sb.append(" at ").append(tok.left).append(':').append(tok.right);
+        }
+        return sb.toString();
+    }
+
+    private static final String[] FRAGMENTS = {
+        "void", "logical", "integer", "True", "False", "tuple", "read",
+        "write", "if", "else", "while", "return", "x", "_y1", "Point",
+        "iff", "voids", "True_", "0", "42", "007", "2147483647",
+        "2147483648", "99999999999999999999", "{", "}", "(", ")", "[", "]",
+        ":", ",", ".", ">>", "<<", "=", "~", "&", "|", "++", "--", "+", "-",
+        "*", "/", "<", ">", "<=", ">=", "==", "~=", "!!", "!", "$", "?",
+        "@", "#", "\"", "\\", "\"abc\"", "\"a\\nb\\tc\"", "\"\\s\"",
+        "\"\\\"\"", "\"\\'\"", "\"\\\\\"", "\"bad\\q\"", "\"bad\\?\"",
+        "\"\\s\\\"x\"", "\"open", "\"open\\", "\"a\\zb", "\"\\s\\\"\\\\",
+        " ", "  ", "\t", "\n", "\n", "\r\n", "\r", "!! comment",
+        "$ comment", "!! a\rb",
+    };
+
+    // a random sequence of fragments and ASCII characters
+    static String randomInput(Random rand) {
+        StringBuilder sb = new StringBuilder();
+        int n = 1 + rand.nextInt(40);
+        for (int i = 0; i < n; i++) {
+            if (rand.nextInt(8) == 0) {
+                sb.append((char) rand.nextInt(128));
+            } else {
+                sb.append(FRAGMENTS[rand.nextInt(FRAGMENTS.length)]);
+            }
+        }
+        return sb.toString();
+    }
+
+    static String read(String name) throws IOException {
+        Reader in = new FileReader(name);
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            sb.append(buf, 0, n);
+        }
+        in.close();
+        return sb.toString();
+    }
+
+    // The checks of the later stages (AstCheck, FlatCheck, LayoutCheck,
+    // ParallelCheck) parse and analyze their programs with these.
+
+    // src parsed with a new NameTable, or null if it doesn't parse; the
+    // messages reported are dropped
+    static ProgramNode parse(String src) {
+        ErrMsg.collectInto(new Diagnostics());
+        try {
+            return P4.parse(P4.newScanner(new StringReader(src),
+                                          new NameTable()), false);
+        } catch (Exception ex) {
+            return null;
+        } finally {
+            ErrMsg.collectInto(null);
+        }
+    }
+
+    // the messages reported by P4.analyze on root, as set up by P4's
+    // flags, and root's unparsed text if there were no errors
+    static String analyze(ProgramNode root) {
+        Diagnostics d = new Diagnostics();
+        ErrMsg.collectInto(d);
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        try {
+            P4.analyze(root, new SymTable(), out);
+        } finally {
+            ErrMsg.collectInto(null);
+        }
+        out.flush();
+        StringBuilder sb = new StringBuilder();
+        for (Diagnostics.Record r : d.records()) {
+            sb.append(r).append('\n');
+        }
+        return sb.append(text).toString();
+    }
+
+    static String escape(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else if (c < 32 || c == 127) {
+                sb.append(String.format("\\x%02x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
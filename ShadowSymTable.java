@@ -0,0 +1,123 @@
+import java.util.*;
+
+// A SymTable kept as one name -> entry map (LeBlanc-Cook style).  Each entry
+// remembers the scope depth it was declared at and the entry it shadows, so
+// lookupGlobal is a single probe no matter how deep the nesting is.  Every
+// scope only records the names declared in it; removeScope uses that list to
+// put the shadowed entries back.
+public class ShadowSymTable extends SymTable {
+	private HashMap<String, Entry> table;
+	private String[] declared;      // names in declaration order, all scopes
+	private int numDeclared;
+	private int[] scopeStart;       // index into declared where each scope starts
+	private int depth;
+
+	public ShadowSymTable() {
+		table = new HashMap<String, Entry>();
+		declared = new String[16];
+		scopeStart = new int[4];
+		depth = 0;
+		addScope();
+	}
+
+	public Sym tryAddDecl(String name, Sym sym)
+	throws EmptySymTableException {
+		if (name == null || sym == null)		throw new IllegalArgumentException();
+
+		if (depth == 0)
+			throw new EmptySymTableException();
+
+		Entry old = table.get(name);
+		if (old != null && old.depth == depth)
+			return old.sym;
+
+		table.put(name, new Entry(sym, depth, old));
+		if (numDeclared == declared.length)
+			declared = Arrays.copyOf(declared, numDeclared * 2);
+		declared[numDeclared++] = name;
+		return null;
+	}
+
+	public void addScope() {
+		if (depth == scopeStart.length)
+			scopeStart = Arrays.copyOf(scopeStart, depth * 2);
+		scopeStart[depth++] = numDeclared;
+	}
+
+	public Sym lookupLocal(String name)
+	throws EmptySymTableException {
+		if (depth == 0)
+			throw new EmptySymTableException();
+
+		Entry e = table.get(name);
+		if (e == null || e.depth != depth)
+			return null;
+		return e.sym;
+	}
+
+	public Sym lookupGlobal(String name)
+	throws EmptySymTableException {
+		if (depth == 0)
+			throw new EmptySymTableException();
+
+		Entry e = table.get(name);
+		return e == null ? null : e.sym;
+	}
+
+	public Map<String, Sym> localDecls()
+	throws EmptySymTableException {
+		if (depth == 0)
+			throw new EmptySymTableException();
+
+		Map<String, Sym> symTab = new LinkedHashMap<String, Sym>();
+		for (int i = scopeStart[depth - 1]; i < numDeclared; i++)
+			symTab.put(declared[i], table.get(declared[i]).sym);
+		return Collections.unmodifiableMap(symTab);
+	}
+
+	public void removeScope()
+	throws EmptySymTableException {
+		if (depth == 0)
+			throw new EmptySymTableException();
+
+		int start = scopeStart[--depth];
+		while (numDeclared > start) {
+			String name = declared[--numDeclared];
+			declared[numDeclared] = null;
+			Entry e = table.get(name);
+			if (e.shadowed == null)
+				table.remove(name);
+			else
+				table.put(name, e.shadowed);
+		}
+	}
+
+	public void print() {
+		System.out.print("\n++++ SYMBOL TABLE\n");
+		int end = numDeclared;
+		for (int d = depth; d >= 1; d--) {
+			HashMap<String, Sym> symTab = new HashMap<String, Sym>();
+			for (int i = scopeStart[d - 1]; i < end; i++) {
+				Entry e = table.get(declared[i]);
+				while (e.depth != d)
+					e = e.shadowed;
+				symTab.put(declared[i], e.sym);
+			}
+			System.out.println(symTab.toString());
+			end = scopeStart[d - 1];
+		}
+		System.out.println("\n++++ END TABLE");
+	}
+
+	private static class Entry {
+		Sym sym;
+		int depth;
+		Entry shadowed;   // declaration of the same name in an outer scope
+
+		Entry(Sym sym, int depth, Entry shadowed) {
+			this.sym = sym;
+			this.depth = depth;
+			this.shadowed = shadowed;
+		}
+	}
+}
@@ -1,4 +1,8 @@
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Sym {
 	private String type;
@@ -29,6 +33,14 @@ class FnSym extends Sym {
 		retType = ret;
 	}
 
+	public String getReturnType() {
+		return retType;
+	}
+
+	public LinkedList<String> getParamTypes() {
+		return paramType;
+	}
+
 	public String toString() {
 		String param = String.join (",", paramType);
 		if (param.equals("")) {
@@ -40,7 +52,7 @@ class FnSym extends Sym {
 
 class TupleDefSym extends Sym {
 	
-	private SymTable symTable;
+	private SymLookup symTable;
 	private String name;
 		
 	public TupleDefSym (String name, SymTable symTable) {
@@ -53,13 +65,171 @@ class TupleDefSym extends Sym {
 
 	// toString will return "tuple"
 
-	public SymTable getSymTable() {
+	// The fields: the SymTable they were declared in or, once the tuple
+	// is laid out, its FieldTable.
+	public SymLookup getSymTable() {
 		return symTable;
 	}
 
+	// Lays the fields out in the order of names, the names of the field
+	// declarations (ones declared twice or not at all are skipped): field i
+	// gets the dense index i and the slots from offset(i) on, a field of
+	// tuple type taking as many slots as its tuple, any other field one.
+	// The tuple types of fields are looked up in globals.  A tuple that
+	// contains itself, directly or through another tuple, can't be
+	// flattened: slots() and the offsets from that field on are -1.
+	//
+	// The fields can't change after this, and the tuple's SymTable is
+	// replaced by a FieldTable holding them in the order of the layout.
+	public void layOut(List<String> names, SymTable globals) {
+		int n = names.size();
+		String[] fieldNames = new String[n];
+		Sym[] fields = new Sym[n];
+		fieldDefs = new TupleDefSym[n];
+		offsets = new int[n];
+		slots = -1;   // while laying out, this tuple has no size
+		HashSet<String> placed = new HashSet<String>();
+		int count = 0;
+		int next = 0;
+		try {
+			for (String fieldName : names) {
+				Sym field = symTable.lookupLocal(fieldName);
+				if (field == null || !placed.add(fieldName))
+					continue;
+				int size = 1;
+				if (field instanceof TupleSym) {
+					Sym def = globals.lookupGlobal(((TupleSym)field).getTupleName());
+					if (def instanceof TupleDefSym) {
+						fieldDefs[count] = (TupleDefSym)def;
+						size = fieldDefs[count].slots;
+					}
+				}
+				fieldNames[count] = fieldName;
+				fields[count] = field;
+				offsets[count] = next;
+				next = next < 0 || size < 0 ? -1 : next + size;
+				count++;
+			}
+		} catch (EmptySymTableException e) {
+			throw new IllegalStateException(e);   // both have a scope
+		}
+		if (count < n) {
+			fieldNames = Arrays.copyOf(fieldNames, count);
+			fields = Arrays.copyOf(fields, count);
+			fieldDefs = Arrays.copyOf(fieldDefs, count);
+			offsets = Arrays.copyOf(offsets, count);
+		}
+		table = new FieldTable(fieldNames, fields);
+		symTable = table;
+		slots = next;
+	}
+
+	// whether layOut has been called
+	public boolean hasLayout() {
+		return table != null;
+	}
+
+	public int fieldCount() {
+		return table.size();
+	}
+
+	// the index of the field called fieldName, or -1 if there is none
+	public int fieldIndex(String fieldName) {
+		return table.indexOf(fieldName);
+	}
+
+	public Sym field(int i) {
+		return table.sym(i);
+	}
+
+	// the tuple type of field i, or null if it isn't a tuple
+	public TupleDefSym fieldDef(int i) {
+		return fieldDefs[i];
+	}
+
+	// the first slot of field i, or -1
+	public int offset(int i) {
+		return offsets[i];
+	}
+
+	// the number of slots a value of this tuple takes, or -1
+	public int slots() {
+		return slots;
+	}
+
+	// What the path of field names resolves to from this tuple, worked out
+	// from the layouts the first time it is asked for and then kept, as
+	// tuples don't change once they are laid out; null if a tuple on the
+	// way has no layout.  Several threads may ask at once.
+	public Path resolve(List<String> path) {
+		ConcurrentHashMap<List<String>, Path> paths = this.paths;
+		if (paths == null) {
+			synchronized (this) {
+				if (this.paths == null)
+					this.paths = new ConcurrentHashMap<List<String>, Path>();
+				paths = this.paths;
+			}
+		}
+		Path p = paths.get(path);
+		if (p == null) {
+			p = new Path(this, path);
+			if (p.fields == null)
+				return null;
+			paths.putIfAbsent(path, p);
+		}
+		return p;
+	}
+
+	// A resolved path of field names.  Field j is field j of tuples[j], or
+	// if j is failed, not a field of it; resolving stops there, and also
+	// after a field that isn't a tuple.
+	static final class Path {
+		final TupleDefSym[] tuples;
+		final Sym[] fields;   // the fields resolved
+		final int failed;     // the field that isn't one, or -1
+		final int slot;       // of the last field, or -1
+
+		private Path(TupleDefSym root, List<String> path) {
+			int n = path.size();
+			TupleDefSym[] tuples = new TupleDefSym[n];
+			Sym[] fields = new Sym[n];
+			int failed = -1;
+			int slot = 0;
+			int j = 0;
+			for (TupleDefSym def = root; def != null && j < n; j++) {
+				if (!def.hasLayout()) {
+					fields = null;
+					break;
+				}
+				tuples[j] = def;
+				int k = def.fieldIndex(path.get(j));
+				if (k < 0) {
+					failed = j;
+					break;
+				}
+				fields[j] = def.field(k);
+				slot = slot < 0 || def.offset(k) < 0 ? -1 : slot + def.offset(k);
+				def = def.fieldDef(k);
+			}
+			this.tuples = tuples;
+			this.fields = fields == null || j == n ? fields : Arrays.copyOf(fields, j);
+			this.failed = failed;
+			this.slot = failed < 0 && j == n ? slot : -1;
+		}
+	}
+
 	public String toString() {
 		return name;
 	}
+
+	// made the first time a path is resolved
+	private volatile ConcurrentHashMap<List<String>, Path> paths;
+
+	// the layout
+	private FieldTable table;
+	private TupleDefSym[] fieldDefs;
+	private int[] offsets;
+	private int slots = -1;
 }
 
 class TupleSym extends Sym {
@@ -72,6 +242,14 @@ class TupleSym extends Sym {
 		this.varName = varName;
 	}
 
+	public String getTupleName() {
+		return tupleName;
+	}
+
+	public String getVarName() {
+		return varName;
+	}
+
 	// we want toString() to return the name of the tuple type
 	public String toString() {
 		return tupleName;
@@ -0,0 +1,19 @@
+import java.util.*;
+
+// The read-only side of a symbol table: looking names up, but not
+// declaring them or opening and closing scopes.  SymTable implements it,
+// and so does FieldTable, which holds the fields of a tuple once they
+// can't change.
+public interface SymLookup {
+	public Sym lookupLocal(String name)
+	throws EmptySymTableException;
+
+	public Sym lookupGlobal(String name)
+	throws EmptySymTableException;
+
+	// The declarations of the innermost scope, read-only.
+	public Map<String, Sym> localDecls()
+	throws EmptySymTableException;
+
+	public void print();
+}
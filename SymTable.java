@@ -1,64 +1,96 @@
 import java.util.*;
 
-public class SymTable {
-	private List<HashMap<String, Sym>> list;
-	
+// The scopes are kept on an array-backed stack: scopes[depth - 1] is the
+// innermost scope.  Maps of popped scopes are cleared and left in place so
+// that the next addScope at the same depth can reuse them instead of
+// allocating a new HashMap.
+public class SymTable implements SymLookup {
+	private HashMap<String, Sym>[] scopes;
+	private int depth;
+
 	public SymTable() {
-		list = new LinkedList<HashMap<String, Sym>>();
-		list.add(new HashMap<String, Sym>());
+		@SuppressWarnings("unchecked")
+		HashMap<String, Sym>[] s = (HashMap<String, Sym>[]) new HashMap<?, ?>[4];
+		scopes = s;
+		scopes[0] = new HashMap<String, Sym>();
+		depth = 1;
 	}
-	
-	public void addDecl(String name, Sym sym) 
+
+	public void addDecl(String name, Sym sym)
 	throws DuplicateSymNameException, EmptySymTableException {
+		if (tryAddDecl(name, sym) != null)
+			throw new DuplicateSymNameException();
+	}
+
+	// Like addDecl, but reports a duplicate by returning the Sym already
+	// declared under name in the current scope instead of throwing.
+	// Returns null if sym was added.
+	public Sym tryAddDecl(String name, Sym sym)
+	throws EmptySymTableException {
 		if (name == null || sym == null)		throw new IllegalArgumentException();
-		
-		if (list.isEmpty())
+
+		if (depth == 0)
 			throw new EmptySymTableException();
-		
-		HashMap<String, Sym> symTab = list.get(0);
-		if (symTab.containsKey(name))
-			throw new DuplicateSymNameException();
-		
-		symTab.put(name, sym);
+
+		HashMap<String, Sym> symTab = scopes[depth - 1];
+		return symTab.putIfAbsent(name, sym);
 	}
-	
+
 	public void addScope() {
-		list.add(0, new HashMap<String, Sym>());
+		if (depth == scopes.length)
+			scopes = Arrays.copyOf(scopes, depth * 2);
+		if (scopes[depth] == null)
+			scopes[depth] = new HashMap<String, Sym>();
+		depth++;
 	}
-	
-	public Sym lookupLocal(String name) 
+
+	public Sym lookupLocal(String name)
 	throws EmptySymTableException {
-		if (list.isEmpty())
+		if (depth == 0)
 			throw new EmptySymTableException();
-		
-		HashMap<String, Sym> symTab = list.get(0); 
+
+		HashMap<String, Sym> symTab = scopes[depth - 1];
 		return symTab.get(name);
 	}
 
-	public Sym lookupGlobal(String name) 
+	public Sym lookupGlobal(String name)
 	throws EmptySymTableException {
-		if (list.isEmpty())
+		if (depth == 0)
 			throw new EmptySymTableException();
-		
-		for (HashMap<String, Sym> symTab : list) {
-			Sym sym = symTab.get(name);
+
+		for (int i = depth - 1; i >= 0; i--) {
+			Sym sym = scopes[i].get(name);
 			if (sym != null)
 				return sym;
 		}
 		return null;
 	}
 
-	public void removeScope() 
+	// The declarations of the innermost scope, read-only.
+	public Map<String, Sym> localDecls()
+	throws EmptySymTableException {
+		if (depth == 0)
+			throw new EmptySymTableException();
+
+		return Collections.unmodifiableMap(scopes[depth - 1]);
+	}
+
+	public void removeScope()
 	throws EmptySymTableException {
-		if (list.isEmpty())
+		if (depth == 0)
 			throw new EmptySymTableException();
-		list.remove(0);
+		depth--;
+		// clearing a HashMap costs its capacity, so don't keep big ones
+		if (scopes[depth].size() > 64)
+			scopes[depth] = null;
+		else
+			scopes[depth].clear();
 	}
 
 	public void print() {
 		System.out.print("\n++++ SYMBOL TABLE\n");
-		for (HashMap<String, Sym> symTab : list) {
-			System.out.println(symTab.toString());
+		for (int i = depth - 1; i >= 0; i--) {
+			System.out.println(scopes[i].toString());
 		}
 		System.out.println("\n++++ END TABLE");
 	}
@@ -0,0 +1,77 @@
+import java.io.*;
+
+/**
+ * UnparseWriter
+ *
+ * The Writer P4 unparses into.  The unparse methods write many short
+ * strings; this collects them in one large, unsynchronized char buffer and
+ * hands them to the encoder a buffer at a time.
+ */
+class UnparseWriter extends Writer {
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private Writer out;
+    private char[] buf;
+    private int count;
+
+    UnparseWriter(OutputStream out) {
+        this.out = new OutputStreamWriter(out);
+        buf = new char[BUFFER_SIZE];
+        count = 0;
+    }
+
+    public void write(int c) throws IOException {
+        if (count == buf.length) {
+            flushBuffer();
+        }
+        buf[count++] = (char) c;
+    }
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (len > buf.length - count) {
+            flushBuffer();
+            if (len > buf.length) {
+                out.write(cbuf, off, len);
+                return;
+            }
+        }
+        System.arraycopy(cbuf, off, buf, count, len);
+        count += len;
+    }
+
+    public void write(String s, int off, int len) throws IOException {
+        if (len > buf.length - count) {
+            flushBuffer();
+            if (len > buf.length) {
+                out.write(s, off, len);
+                return;
+            }
+        }
+        s.getChars(off, off + len, buf, count);
+        count += len;
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        if (buf == null) {
+            return;
+        }
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+            buf = null;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+}
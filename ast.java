@@ -110,9 +110,22 @@ abstract class ASTnode {
     // every subclass must provide an unparse operation
     abstract public void unparse(PrintWriter p, int indent);
 
+    // and a write operation, which writes it in AstWriter's binary form
+    abstract public void write(AstWriter out);
+
     // this method can be used by the unparse methods to do indenting
     protected void doIndent(PrintWriter p, int indent) {
-        for (int k=0; k<indent; k++) p.print(" ");
+        while (indent > SPACES.length) {
+            p.write(SPACES, 0, SPACES.length);
+            indent -= SPACES.length;
+        }
+        if (indent > 0) p.write(SPACES, 0, indent);
+    }
+
+    // indentation is written as one slice of this array
+    private static final char[] SPACES = new char[256];
+    static {
+        Arrays.fill(SPACES, ' ');
     }
 }
 
@@ -130,10 +143,19 @@ class ProgramNode extends ASTnode {
         myDeclList.unparse(p, indent);
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.PROGRAM);
+        out.node(myDeclList);
+    }
+
 	public void nameAnalysis(SymTable symTable) {
 		myDeclList.nameAnalysis(symTable);
 	}
 
+	public DeclListNode getDeclList() {
+		return myDeclList;
+	}
+
     // 1 child
     private DeclListNode myDeclList;
 }
@@ -155,6 +177,11 @@ class DeclListNode extends ASTnode {
         }
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.DECL_LIST);
+        out.list(myDecls);
+    }
+
 	public void nameAnalysis(SymTable symTable) {
 		for (int i = 0; i < myDecls.size(); i++) {
 			myDecls.get(i).nameAnalysis(symTable);
@@ -201,6 +228,10 @@ class DeclListNode extends ASTnode {
 		}
 	}
 
+	public List<DeclNode> getDecls() {
+		return myDecls;
+	}
+
     // list of children (DeclNodes)
     private List<DeclNode> myDecls;
 }
@@ -216,6 +247,11 @@ class StmtListNode extends ASTnode {
             it.next().unparse(p, indent);
         } 
     }
+
+    public void write(AstWriter out) {
+        out.tag(AstWriter.STMT_LIST);
+        out.list(myStmts);
+    }
 	
 	public void nameAnalysis(SymTable symTable) {
 		for (int i = 0; i < myStmts.size(); i++) {
@@ -243,6 +279,11 @@ class ExpListNode extends ASTnode {
         } 
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.EXP_LIST);
+        out.list(myExps);
+    }
+
 	public void nameAnalysis(SymTable symTable) {
 		for (int i = 0; i < myExps.size(); i++) {
 			myExps.get(i).nameAnalysis(symTable);
@@ -267,6 +308,11 @@ class FormalsListNode extends ASTnode {
             }
         }
     }
+
+    public void write(AstWriter out) {
+        out.tag(AstWriter.FORMALS_LIST);
+        out.list(myFormals);
+    }
 	
 	public LinkedList<String> getFormalList() {
 		LinkedList<String> retVal = new LinkedList<String>();
@@ -297,6 +343,12 @@ class FctnBodyNode extends ASTnode {
         myStmtList.unparse(p, indent);
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.FCTN_BODY);
+        out.node(myDeclList);
+        out.node(myStmtList);
+    }
+
     public void nameAnalysis (SymTable symTable) {
 	myDeclList.nameAnalysisFnBody(symTable);
         myStmtList.nameAnalysis(symTable);
@@ -332,6 +384,13 @@ class VarDeclNode extends DeclNode {
         p.println(".");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.VAR_DECL);
+        out.node(myType);
+        out.node(myId);
+        out.signed(mySize);
+    }
+
 	public void nameAnalysis(SymTable symTable) {
 		// System.out.println("line: " + myId.myLineNum);symTable.print();
 		if (myType instanceof VoidNode) {
@@ -380,10 +439,10 @@ class VarDeclNode extends DeclNode {
 				ErrMsg.fatal(((TupleNode)myType).myId.myLineNum, ((TupleNode)myType).myId.myCharNum, "Invalid name of tuple type");
 			} else {	
 				try {
-		            tupleSymTable.addDecl(varName, new TupleSym(tupleName, varName));
-	            } catch (DuplicateSymNameException e) {
-				    ErrMsg.fatal(myId.myLineNum, myId.myCharNum, "Multiply-declared identifier");
-			    } catch (Exception e) {
+		            if (tupleSymTable.tryAddDecl(varName, new TupleSym(tupleName, varName)) != null) {
+				        ErrMsg.fatal(myId.myLineNum, myId.myCharNum, "Multiply-declared identifier");
+				    }
+			    } catch (EmptySymTableException e) {
 		            System.out.println(e);
 	            }
 			}
@@ -394,10 +453,10 @@ class VarDeclNode extends DeclNode {
 
 	public void nameAnalysisVarHelper(SymTable symTable) {
 		try {
-			symTable.addDecl(myId.toString(), new Sym(myType.toString()));
-		} catch (DuplicateSymNameException e) {
-			ErrMsg.fatal(myId.myLineNum, myId.myCharNum, "Multiply-declared identifier");
-		} catch (Exception e) {
+			if (symTable.tryAddDecl(myId.toString(), new Sym(myType.toString())) != null) {
+				ErrMsg.fatal(myId.myLineNum, myId.myCharNum, "Multiply-declared identifier");
+			}
+		} catch (EmptySymTableException e) {
 			System.out.println(e);
 		}
     	}
@@ -437,17 +496,36 @@ class FctnDeclNode extends DeclNode {
         p.println("]\n");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.FCTN_DECL);
+        out.node(myType);
+        out.node(myId);
+        out.node(myFormalsList);
+        out.node(myBody);
+    }
+
 	public void nameAnalysis(SymTable symTable) {
+		declare(symTable);
+		bodyNameAnalysis(symTable);
+	}
+
+	// the first half of nameAnalysis: declares the function in the
+	// current scope
+	public void declare(SymTable symTable) {
 		LinkedList<String> param = myFormalsList.getFormalList();
 
 		try {
-			symTable.addDecl(myId.toString(), new FnSym(myType.toString(), param));			
-		} catch (DuplicateSymNameException e) {
-			ErrMsg.fatal(myId.myLineNum, myId.myCharNum, "Multiply-declared identifier");
-		} catch (Exception e) {
+			if (symTable.tryAddDecl(myId.toString(), new FnSym(myType.toString(), param)) != null) {
+				ErrMsg.fatal(myId.myLineNum, myId.myCharNum, "Multiply-declared identifier");
+			}
+		} catch (EmptySymTableException e) {
 			System.out.println(e.getMessage());
 		}
+	}
 
+	// the second half of nameAnalysis: analyzes the parameters and body
+	// in a scope of their own
+	public void bodyNameAnalysis(SymTable symTable) {
 		// add a new scope for parameters and function body
 		symTable.addScope();
 		myFormalsList.nameAnalysis(symTable);
@@ -484,6 +562,12 @@ class FormalDeclNode extends DeclNode {
         myId.unparse(p, 0);
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.FORMAL_DECL);
+        out.node(myType);
+        out.node(myId);
+    }
+
 	public void nameAnalysis(SymTable symTable) {
 		if (myType.toString().equals("void")) {
 			ErrMsg.fatal(myId.myLineNum, myId.myCharNum, "Non-function declared void");
@@ -495,10 +579,10 @@ class FormalDeclNode extends DeclNode {
  
     public void nameAnalysisVarHelper(SymTable symTable) {
 	try {
-            symTable.addDecl(myId.toString(), new Sym(myType.toString()));
-        } catch (DuplicateSymNameException e) {
-            ErrMsg.fatal(myId.myLineNum, myId.myCharNum, "Multiply-declared identifier");
-        } catch (Exception e) {
+            if (symTable.tryAddDecl(myId.toString(), new Sym(myType.toString())) != null) {
+                ErrMsg.fatal(myId.myLineNum, myId.myCharNum, "Multiply-declared identifier");
+            }
+        } catch (EmptySymTableException e) {
 		    System.out.println(e.getMessage());
         }
     }
@@ -528,27 +612,44 @@ class TupleDeclNode extends DeclNode {
         p.println("}.\n");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.TUPLE_DECL);
+        out.node(myId);
+        out.node(myDeclList);
+    }
+
     public void nameAnalysis(SymTable symTable) {
 		SymTable mySymTable = new SymTable();
 		TupleDefSym tupleDeclSym = new TupleDefSym(myId.toString(), mySymTable); // has type tuple
 	
 		try {
 			// checking if identifier of this tuple decl has already been used
-			symTable.addDecl(myId.toString(), tupleDeclSym);
-		} catch (DuplicateSymNameException e) {
-			ErrMsg.fatal(myId.myLineNum, myId.myCharNum, "Multiply-declared identifier");
-		} catch (Exception e) {
+			if (symTable.tryAddDecl(myId.toString(), tupleDeclSym) != null) {
+				ErrMsg.fatal(myId.myLineNum, myId.myCharNum, "Multiply-declared identifier");
+			}
+		} catch (EmptySymTableException e) {
 		    System.out.println(e.getMessage());
 		}
 		
 		// analyze the decl list of the tuple in its own new sym table
 		myDeclList.nameAnalysis(symTable, mySymTable);
+
+		// and lay its fields out in the order they are declared
+		List<String> names = new ArrayList<String>();
+		for (DeclNode decl : myDeclList.getDecls()) {
+			names.add(decl.getId().toString());
+		}
+		tupleDeclSym.layOut(names, symTable);
     }
 
 	public IdNode getId() {
 		return myId;
 	}
 
+	public DeclListNode getDeclList() {
+		return myDeclList;
+	}
+
     // 2 children
     public IdNode myId;
     private DeclListNode myDeclList;
@@ -569,6 +670,10 @@ class LogicalNode extends TypeNode {
     public void unparse(PrintWriter p, int indent) {
         p.print("logical");
     }
+
+    public void write(AstWriter out) {
+        out.tag(AstWriter.LOGICAL);
+    }
 	
 	public String toString() {
 		return "logical";
@@ -583,6 +688,10 @@ class IntegerNode extends TypeNode {
         p.print("integer");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.INTEGER);
+    }
+
 	public String toString() {
 		return "integer";
 	}
@@ -596,6 +705,10 @@ class VoidNode extends TypeNode {
         p.print("void");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.VOID);
+    }
+
 	public String toString() {
 		return "void";
 	}
@@ -611,6 +724,11 @@ class TupleNode extends TypeNode {
         myId.unparse(p, 0);
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.TUPLE);
+        out.node(myId);
+    }
+
 	public void nameAnalysis(SymTable symTable) {
 		// TODO: Wait how do you get access to tuple type? not ID
 		/*
@@ -660,6 +778,11 @@ class AssignStmtNode extends StmtNode {
         p.println(".");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.ASSIGN_STMT);
+        out.node(myAssign);
+    }
+
 	public void nameAnalysis(SymTable symTable) {
 		myAssign.nameAnalysis(symTable);
 	}
@@ -679,6 +802,11 @@ class PostIncStmtNode extends StmtNode {
         p.println("++.");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.POST_INC_STMT);
+        out.node(myExp);
+    }
+
     public void nameAnalysis(SymTable symTable) {
 	myExp.nameAnalysis(symTable);
     }
@@ -698,6 +826,11 @@ class PostDecStmtNode extends StmtNode {
         p.println("--.");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.POST_DEC_STMT);
+        out.node(myExp);
+    }
+
     public void nameAnalysis(SymTable symTable) {
         myExp.nameAnalysis(symTable);
     }
@@ -724,6 +857,13 @@ class IfStmtNode extends StmtNode {
         p.println("]");  
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.IF_STMT);
+        out.node(myExp);
+        out.node(myDeclList);
+        out.node(myStmtList);
+    }
+
 	public void nameAnalysis(SymTable symTable) {
 		myExp.nameAnalysis(symTable);
 		
@@ -775,6 +915,15 @@ class IfElseStmtNode extends StmtNode {
         p.println("]"); 
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.IF_ELSE_STMT);
+        out.node(myExp);
+        out.node(myThenDeclList);
+        out.node(myThenStmtList);
+        out.node(myElseDeclList);
+        out.node(myElseStmtList);
+    }
+
 	public void nameAnalysis(SymTable symTable) {
 		myExp.nameAnalysis(symTable);
 	
@@ -830,6 +979,13 @@ class WhileStmtNode extends StmtNode {
         p.println("]");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.WHILE_STMT);
+        out.node(myExp);
+        out.node(myDeclList);
+        out.node(myStmtList);
+    }
+
 	public void nameAnalysis(SymTable symTable) {
 		myExp.nameAnalysis(symTable);
 
@@ -863,6 +1019,11 @@ class ReadStmtNode extends StmtNode {
         p.println(".");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.READ_STMT);
+        out.node(myExp);
+    }
+
     public void nameAnalysis(SymTable symTable) {
         myExp.nameAnalysis(symTable);
     }
@@ -883,6 +1044,11 @@ class WriteStmtNode extends StmtNode {
         p.println(".");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.WRITE_STMT);
+        out.node(myExp);
+    }
+
     public void nameAnalysis(SymTable symTable) {
         myExp.nameAnalysis(symTable);
     }    
@@ -902,6 +1068,11 @@ class CallStmtNode extends StmtNode {
         p.println(".");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.CALL_STMT);
+        out.node(myCall);
+    }
+
     public void nameAnalysis(SymTable symTable) {
         myCall.nameAnalysis(symTable);
     } 
@@ -925,6 +1096,11 @@ class ReturnStmtNode extends StmtNode {
         p.println(".");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.RETURN_STMT);
+        out.node(myExp);
+    }
+
     public void nameAnalysis(SymTable symTable) {
         if (myExp != null) { // prevent null pointer access
 			myExp.nameAnalysis(symTable);
@@ -953,6 +1129,11 @@ class TrueNode extends ExpNode {
         p.print("True");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.TRUE);
+        out.position(myLineNum, myCharNum);
+    }
+
     public void nameAnalysis(SymTable symTable) {}
 
     private int myLineNum;
@@ -969,6 +1150,11 @@ class FalseNode extends ExpNode {
         p.print("False");
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.FALSE);
+        out.position(myLineNum, myCharNum);
+    }
+
     public void nameAnalysis(SymTable symTable) {}
 
     private int myLineNum;
@@ -991,6 +1177,13 @@ class IdNode extends ExpNode {
 	}
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.ID);
+        out.position(myLineNum, myCharNum);
+        out.string(myStrVal);
+        out.sym(mySym);
+    }
+
     public String toString() {
 	return myStrVal;
     }
@@ -1012,11 +1205,19 @@ class IdNode extends ExpNode {
 		}
     }
 
-    public void setSymTable(SymTable symTable) {
+    public void setSymTable(SymLookup symTable) {
 	    mySymTable = symTable;
     }
 
-    private SymTable mySymTable;
+    public Sym getSym() {
+        return mySym;
+    }
+
+    public void setSym(Sym sym) {
+        mySym = sym;
+    }
+
+    private SymLookup mySymTable;
     public int myLineNum;
     public int myCharNum;
     public String myStrVal;
@@ -1034,6 +1235,12 @@ class IntLitNode extends ExpNode {
         p.print(myIntVal);
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.INT_LIT);
+        out.position(myLineNum, myCharNum);
+        out.signed(myIntVal);
+    }
+
     public void nameAnalysis(SymTable symTable) {}
 
     private int myLineNum;
@@ -1052,6 +1259,12 @@ class StrLitNode extends ExpNode {
         p.print(myStrVal);
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.STR_LIT);
+        out.position(myLineNum, myCharNum);
+        out.string(myStrVal);
+    }
+
     public void nameAnalysis(SymTable symTable) {}
 
     private int myLineNum;
@@ -1071,6 +1284,12 @@ class TupleAccessNode extends ExpNode {
         myId.unparse(p, 0);
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.TUPLE_ACCESS);
+        out.node(myLoc);
+        out.node(myId);
+    }
+
 	public void nameAnalysis(SymTable symTable) {
 		int i = 0;
 		ExpNode curExp = this;
@@ -1097,9 +1316,13 @@ class TupleAccessNode extends ExpNode {
 				curExp.nameAnalysis(symTable); // call nameanalysis on leftmost
 				String nextTupleName = sym.toString(); // this should return tuple name
 				curCharNum += curExp.toString().length() + 1; // updates curCharNum
+				mySlot = -1;
+				if (cachedNameAnalysis(symTable, nextTupleName, idList)) return;
+				curSlot = 0;
 				for(int j = 0; j < i; j++) {
 					nextTupleName = strNameAnalysis(symTable, nextTupleName, idList.get(j));
 					curCharNum += idList.get(j).toString().length() + 1;
+					if (j == i - 1 && curFound) mySlot = curSlot;
 					// guard
 					if (nextTupleName == null) break;
 				}
@@ -1109,8 +1332,44 @@ class TupleAccessNode extends ExpNode {
 		}
 	}
 
+	// resolves the fields in ids through the path cache of the tuple they
+	// start from (TupleDefSym.resolve), checking only that the tuple type
+	// names on the way aren't shadowed here; returns false, having done
+	// nothing, if the path can't be used, for strNameAnalysis to go
+	// through the fields one by one
+	private boolean cachedNameAnalysis(SymTable symTable, String tupleName, List<IdNode> ids)
+	throws EmptySymTableException {
+		Sym root = symTable.lookupGlobal(tupleName);
+		if (!(root instanceof TupleDefSym)) return false;
+		if (myPath == null) {
+			List<String> names = new ArrayList<String>(ids.size());
+			for (IdNode id : ids) {
+				names.add(id.toString());
+			}
+			myPath = names;
+		}
+		TupleDefSym.Path path = ((TupleDefSym)root).resolve(myPath);
+		if (path == null) return false;
+		int hops = path.failed < 0 ? path.fields.length : path.failed + 1;
+		for (int j = 1; j < hops; j++) {
+			if (symTable.lookupGlobal(path.fields[j - 1].toString()) != path.tuples[j]) return false;
+		}
+
+		for (int j = 0; j < path.fields.length; j++) {
+			ids.get(j).setSymTable(path.tuples[j].getSymTable());
+			ids.get(j).setSym(path.fields[j]);
+		}
+		if (path.failed >= 0) {
+			IdNode id = ids.get(path.failed);
+			ErrMsg.fatal(id.myLineNum, id.myCharNum, "Invalid tuple field name");
+		}
+		mySlot = path.slot;
+		return true;
+	}
+
 	// checks the LHS of a tuple access node and returns name of tupledecl in a nested tuple decl
 	public String strNameAnalysis(SymTable symTable, String tupleDeclName, IdNode curId) {
+		curFound = false;
       		try {
                    	Sym sym = symTable.lookupGlobal(tupleDeclName); // LHS is a declared Tuple type
 			// symTable.print();
@@ -1119,14 +1378,32 @@ class TupleAccessNode extends ExpNode {
                   		ErrMsg.fatal(curLineNum, curCharNum, "Undeclared identifier");
                  	} else if (!(sym instanceof TupleDefSym)) { // not declared
   	               		ErrMsg.fatal(curLineNum, curCharNum, "Invalid name of tuple type");
+       		     	} else if (((TupleDefSym)sym).hasLayout()) {
+				// the field's index, Sym and slot come from the layout
+				TupleDefSym def = (TupleDefSym)sym;
+				int k = def.fieldIndex(curId.toString());
+				if (k < 0) {
+					ErrMsg.fatal(curId.myLineNum, curId.myCharNum, "Invalid tuple field name");
+				} else {
+					Sym field = def.field(k);
+					curId.setSymTable(def.getSymTable());
+					curId.setSym(field);
+					curSlot = curSlot < 0 || def.offset(k) < 0 ? -1 : curSlot + def.offset(k);
+					curFound = true;
+					if (field instanceof TupleSym) {
+						return field.toString();
+					}
+				}
        		     	} else { // check if the RHS is a valid field
-                        	SymTable curSymTable = ((TupleDefSym)sym).getSymTable();
+                        	SymLookup curSymTable = ((TupleDefSym)sym).getSymTable();
                              	Sym sym2 = curSymTable.lookupGlobal(curId.toString());
                        		if(sym2 == null) {
                             		ErrMsg.fatal(curId.myLineNum, curId.myCharNum, "Invalid tuple field name");
                              	} else {
 					curId.setSymTable(curSymTable);
 					curId.nameAnalysis(symTable);
+					curSlot = -1;
+					curFound = true;
 					if (sym2 instanceof TupleSym) {
 						return sym2.toString();
 					}
@@ -1138,11 +1415,32 @@ class TupleAccessNode extends ExpNode {
 		return null;
 	}
 
+	// the slot of the accessed field among those of the tuple variable
+	// the chain starts from, or -1 if there is none (an error, or a
+	// tuple without a flat layout)
+	public int getSlot() {
+		return mySlot;
+	}
+
+	// the expression left of the colon
+	ExpNode getLoc() {
+		return myLoc;
+	}
+
+	// the field right of the colon
+	IdNode getId() {
+		return myId;
+	}
+
     // 2 children
     private ExpNode myLoc;	
     private IdNode myId;
     private int curLineNum; // used to keep track of where we got
     private int curCharNum; // used to keep track of where we got
+    private int curSlot;    // the slot we got to, or -1
+    private boolean curFound; // whether the last field was found
+    private List<String> myPath; // the field names, the key of the path cache
+    private int mySlot = -1;
 }
 
 class AssignExpNode extends ExpNode {
@@ -1158,6 +1456,12 @@ class AssignExpNode extends ExpNode {
         myExp.unparse(p, 0);
         if (indent != -1)  p.print(")");    
     }
+
+    public void write(AstWriter out) {
+        out.tag(AstWriter.ASSIGN_EXP);
+        out.node(myLhs);
+        out.node(myExp);
+    }
 	
 	public void nameAnalysis(SymTable symTable) {
 		myLhs.nameAnalysis(symTable);
@@ -1190,6 +1494,12 @@ class CallExpNode extends ExpNode {
         p.print(")");   
     }
 
+    public void write(AstWriter out) {
+        out.tag(AstWriter.CALL_EXP);
+        out.node(myId);
+        out.node(myExpList);
+    }
+
     public void nameAnalysis(SymTable symTable){
     	myId.nameAnalysis(symTable);
     	myExpList.nameAnalysis(symTable);
@@ -1209,6 +1519,14 @@ abstract class UnaryExpNode extends ExpNode {
         myExp.nameAnalysis(symTable);
     }
 
+    public void write(AstWriter out) {
+        out.tag(tag());
+        out.node(myExp);
+    }
+
+    // the AstWriter tag of this operator
+    abstract int tag();
+
     // 1 child
     protected ExpNode myExp;
 }
@@ -1224,6 +1542,15 @@ abstract class BinaryExpNode extends ExpNode {
         myExp2.nameAnalysis(symTable);
     }
 
+    public void write(AstWriter out) {
+        out.tag(tag());
+        out.node(myExp1);
+        out.node(myExp2);
+    }
+
+    // the AstWriter tag of this operator
+    abstract int tag();
+
     // 2 children
     protected ExpNode myExp1;
     protected ExpNode myExp2;
@@ -1243,6 +1570,10 @@ class NotNode extends UnaryExpNode {
         myExp.unparse(p, 0);
         p.print(")");
     }
+
+    int tag() {
+        return AstWriter.NOT;
+    }
 }
 
 class UnaryMinusNode extends UnaryExpNode {
@@ -1255,6 +1586,10 @@ class UnaryMinusNode extends UnaryExpNode {
         myExp.unparse(p, 0);
         p.print(")");
     }
+
+    int tag() {
+        return AstWriter.UNARY_MINUS;
+    }
 }
 
 // **********************************************************************
@@ -1273,6 +1608,10 @@ class PlusNode extends BinaryExpNode {
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    int tag() {
+        return AstWriter.PLUS;
+    }
 }
 
 class MinusNode extends BinaryExpNode {
@@ -1287,6 +1626,10 @@ class MinusNode extends BinaryExpNode {
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    int tag() {
+        return AstWriter.MINUS;
+    }
 }
 
 class TimesNode extends BinaryExpNode {
@@ -1301,6 +1644,10 @@ class TimesNode extends BinaryExpNode {
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    int tag() {
+        return AstWriter.TIMES;
+    }
 }
 
 class DivideNode extends BinaryExpNode {
@@ -1315,6 +1662,10 @@ class DivideNode extends BinaryExpNode {
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    int tag() {
+        return AstWriter.DIVIDE;
+    }
 }
 
 class EqualsNode extends BinaryExpNode {
@@ -1329,6 +1680,10 @@ class EqualsNode extends BinaryExpNode {
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    int tag() {
+        return AstWriter.EQUALS;
+    }
 }
 
 class NotEqualsNode extends BinaryExpNode {
@@ -1343,6 +1698,10 @@ class NotEqualsNode extends BinaryExpNode {
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    int tag() {
+        return AstWriter.NOT_EQUALS;
+    }
 }
 
 class GreaterNode extends BinaryExpNode {
@@ -1357,6 +1716,10 @@ class GreaterNode extends BinaryExpNode {
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    int tag() {
+        return AstWriter.GREATER;
+    }
 }
 
 class GreaterEqNode extends BinaryExpNode {
@@ -1371,6 +1734,10 @@ class GreaterEqNode extends BinaryExpNode {
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    int tag() {
+        return AstWriter.GREATER_EQ;
+    }
 }
 
 class LessNode extends BinaryExpNode {
@@ -1385,6 +1752,10 @@ class LessNode extends BinaryExpNode {
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    int tag() {
+        return AstWriter.LESS;
+    }
 }
 
 class LessEqNode extends BinaryExpNode {
@@ -1399,6 +1770,10 @@ class LessEqNode extends BinaryExpNode {
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    int tag() {
+        return AstWriter.LESS_EQ;
+    }
 }
 
 
@@ -1414,6 +1789,10 @@ class AndNode extends BinaryExpNode {
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    int tag() {
+        return AstWriter.AND;
+    }
 }
 
 class OrNode extends BinaryExpNode {
@@ -1428,4 +1807,8 @@ class OrNode extends BinaryExpNode {
         myExp2.unparse(p, 0);
         p.print(")");
     }
+
+    int tag() {
+        return AstWriter.OR;
+    }
 }
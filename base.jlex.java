@@ -1,17 +1,26 @@
 import java_cup.runtime.*; // defines the Symbol class
 // The generated scanner will return a Symbol for each token that it finds.
-// A Symbol contains an Object field named value; that field will be of type
-// TokenVal, defined below.
+// A Symbol contains an Object field named value; for literals, IDs, True
+// and False that field will be of type TokenVal, defined below.
 //
 // A TokenVal object contains the line number on which the token occurs as
 // well as the number of the character on that line that starts the token.
 // Some tokens (literals and IDs) also include the value of the token.
-class TokenVal {
+//
+// A TokenVal is itself the token's Symbol, whose value is the TokenVal,
+// so that each token costs one object rather than a Symbol and a TokenVal.
+// The other tokens (keywords, operators and punctuation) carry nothing but
+// their position, so they are plain Symbols: their value is null and the
+// line and character numbers are kept in their left and right fields.
+// Every token has its position in left and right.
+class TokenVal extends Symbol {
     // fields
     int lineNum;
     int charNum;
     // constructor
-    TokenVal(int lineNum, int charNum) {
+    TokenVal(int kind, int lineNum, int charNum) {
+        super(kind, lineNum, charNum);
+        value = this;
         this.lineNum = lineNum;
         this.charNum = charNum;
     }
@@ -20,8 +29,8 @@ class IntLitTokenVal extends TokenVal {
     // new field: the value of the integer literal
     int intVal;
     // constructor
-    IntLitTokenVal(int lineNum, int charNum, int intVal) {
-        super(lineNum, charNum);
+    IntLitTokenVal(int kind, int lineNum, int charNum, int intVal) {
+        super(kind, lineNum, charNum);
         this.intVal = intVal;
     }
 }
@@ -29,8 +38,8 @@ class IdTokenVal extends TokenVal {
     // new field: the value of the identifier
     String idVal;
     // constructor
-    IdTokenVal(int lineNum, int charNum, String idVal) {
-        super(lineNum, charNum);
+    IdTokenVal(int kind, int lineNum, int charNum, String idVal) {
+        super(kind, lineNum, charNum);
         this.idVal = idVal;
     }
 }
@@ -38,16 +47,11 @@ class StrLitTokenVal extends TokenVal {
     // new field: the value of the string literal
     String strVal;
     // constructor
-    StrLitTokenVal(int lineNum, int charNum, String strVal) {
-        super(lineNum, charNum);
+    StrLitTokenVal(int kind, int lineNum, int charNum, String strVal) {
+        super(kind, lineNum, charNum);
         this.strVal = strVal;
     }
 }
-// The following class is used to keep track of the character number at 
-// which the current token starts on its line.
-class CharNum {
-    static int num = 1;
-}
 
 
 class Yylex implements java_cup.runtime.Scanner {
@@ -60,6 +64,47 @@ class Yylex implements java_cup.runtime.Scanner {
 	private final int YY_NO_ANCHOR = 4;
 	private final int YY_BOL = 128;
 	private final int YY_EOF = 129;
+
+// The character number at which the current token starts on its line.
+// It is kept per scanner, so several scanners can run at the same time.
+private int charNum = 1;
+// The table identifiers are interned in, by default one of this scanner's
+// own, so the names live no longer than the scanner.
+private NameTable names = new NameTable();
+// Interns identifiers in the given table instead, e.g. to give each file a
+// reused scanner reads a table of its own.
+void setNameTable(NameTable names) {
+    this.names = names;
+}
+// Makes this scanner start over on a new input, keeping its buffer, so one
+// scanner can be used for many files in turn.
+void reset(java.io.Reader reader) {
+    yy_reader = new java.io.BufferedReader(reader);
+    yy_buffer_read = 0;
+    yy_buffer_index = 0;
+    yy_buffer_start = 0;
+    yy_buffer_end = 0;
+    yyline = 0;
+    yy_at_bol = true;
+    yy_last_was_cr = false;
+    yy_eof_done = false;
+    yy_lexical_state = YYINITIAL;
+    charNum = 1;
+}
+// Returns the value of the decimal literal buf[start..start+len), or -1 if
+// it is larger than Integer.MAX_VALUE.  Works on the scanner's buffer
+// directly, so no String is built for the literal.
+static int intLiteral(char[] buf, int start, int len) {
+    int val = 0;
+    for (int i = start; i < start + len; i++) {
+        int d = buf[i] - '0';
+        if (val > (Integer.MAX_VALUE - d) / 10) {
+            return -1;
+        }
+        val = val * 10 + d;
+    }
+    return val;
+}
 	private java.io.BufferedReader yy_reader;
 	private int yy_buffer_index;
 	private int yy_buffer_read;
@@ -441,26 +486,23 @@ return new Symbol(sym.EOF);
 						break;
 					case 2:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -3:
 						break;
 					case 3:
-						{ double val = Double.parseDouble(yytext());
-            int intVal;
-            if (val > Integer.MAX_VALUE) {
-                ErrMsg.warn(yyline+1, CharNum.num,
+						{ int intVal = intLiteral(yy_buffer, yy_buffer_start, yylength());
+            if (intVal < 0) {
+                ErrMsg.warn(yyline+1, charNum,
                             "integer literal too large - using max value");
                 intVal = Integer.MAX_VALUE;
-            } else {
-                intVal = Integer.parseInt(yytext());
             }
-            Symbol S = new Symbol(sym.INTLITERAL,
-                             new IntLitTokenVal(yyline+1, CharNum.num, intVal));
-            CharNum.num += yytext().length();
+            Symbol S = new IntLitTokenVal(sym.INTLITERAL, yyline+1, charNum, intVal);
+            charNum += yylength();
             return S;
           }
 					case -4:
@@ -468,24 +510,24 @@ return new Symbol(sym.EOF);
 					case 4:
 						{
             // unterminated string
-            ErrMsg.fatal(yyline+1, CharNum.num,
+            ErrMsg.fatal(yyline+1, charNum,
                          "unterminated string literal ignored");
           }
 					case -5:
 						break;
 					case 5:
-						{ ErrMsg.fatal(yyline+1, CharNum.num,
+						{ ErrMsg.fatal(yyline+1, charNum,
                          "illegal character ignored: " + yytext());
-            CharNum.num++;
+            charNum++;
           }
 					case -6:
 						break;
 					case 6:
-						{ CharNum.num = 1; }
+						{ charNum = 1; }
 					case -7:
 						break;
 					case 7:
-						{ CharNum.num += yytext().length(); }
+						{ charNum += yylength(); }
 					case -8:
 						break;
 					case 8:
@@ -495,141 +537,141 @@ return new Symbol(sym.EOF);
 					case -9:
 						break;
 					case 9:
-						{ Symbol S = new Symbol(sym.LCURLY, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.LCURLY, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -10:
 						break;
 					case 10:
-						{ Symbol S = new Symbol(sym.RCURLY, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.RCURLY, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -11:
 						break;
 					case 11:
-						{ Symbol S = new Symbol(sym.LPAREN, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.LPAREN, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -12:
 						break;
 					case 12:
-						{ Symbol S = new Symbol(sym.RPAREN, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.RPAREN, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -13:
 						break;
 					case 13:
-						{ Symbol S = new Symbol(sym.LSQBRACKET, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.LSQBRACKET, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -14:
 						break;
 					case 14:
-						{ Symbol S = new Symbol(sym.RSQBRACKET, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.RSQBRACKET, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -15:
 						break;
 					case 15:
-						{ Symbol S = new Symbol(sym.COLON, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.COLON, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -16:
 						break;
 					case 16:
-						{ Symbol S = new Symbol(sym.COMMA, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.COMMA, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -17:
 						break;
 					case 17:
-						{ Symbol S = new Symbol(sym.DOT, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.DOT, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -18:
 						break;
 					case 18:
-						{ Symbol S = new Symbol(sym.GREATER, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.GREATER, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -19:
 						break;
 					case 19:
-						{ Symbol S = new Symbol(sym.LESS, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.LESS, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -20:
 						break;
 					case 20:
-						{ Symbol S = new Symbol(sym.ASSIGN, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.ASSIGN, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -21:
 						break;
 					case 21:
-						{ Symbol S = new Symbol(sym.NOT, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.NOT, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -22:
 						break;
 					case 22:
-						{ Symbol S = new Symbol(sym.AND, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.AND, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -23:
 						break;
 					case 23:
-						{ Symbol S = new Symbol(sym.OR, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.OR, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -24:
 						break;
 					case 24:
-						{ Symbol S = new Symbol(sym.PLUS, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.PLUS, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -25:
 						break;
 					case 25:
-						{ Symbol S = new Symbol(sym.MINUS, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.MINUS, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -26:
 						break;
 					case 26:
-						{ Symbol S = new Symbol(sym.TIMES, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.TIMES, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -27:
 						break;
 					case 27:
-						{ Symbol S = new Symbol(sym.DIVIDE, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num++;
+						{ Symbol S = new Symbol(sym.DIVIDE, yyline+1, charNum);
+            charNum++;
             return S;
           }
 					case -28:
 						break;
 					case 28:
-						{ Symbol S = new Symbol(sym.IF, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
+						{ Symbol S = new Symbol(sym.IF, yyline+1, charNum);
+            charNum += yylength();
             return S;
           }
 					case -29:
@@ -637,9 +679,8 @@ return new Symbol(sym.EOF);
 					case 29:
 						{
             String strVal = yytext();
-            Symbol S = new Symbol(sym.STRLITERAL,
-                             new StrLitTokenVal(yyline+1, CharNum.num, strVal));
-            CharNum.num += yytext().length();
+            Symbol S = new StrLitTokenVal(sym.STRLITERAL, yyline+1, charNum, strVal);
+            charNum += yylength();
             return S;
           }
 					case -30:
@@ -647,91 +688,91 @@ return new Symbol(sym.EOF);
 					case 30:
 						{
             // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
+            ErrMsg.fatal(yyline+1, charNum,
              "unterminated string literal with bad escaped character ignored");
           }
 					case -31:
 						break;
 					case 31:
-						{ Symbol S = new Symbol(sym.INPUTOP, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
+						{ Symbol S = new Symbol(sym.INPUTOP, yyline+1, charNum);
+            charNum += 2;
             return S;
           }
 					case -32:
 						break;
 					case 32:
-						{ Symbol S = new Symbol(sym.GREATEREQ, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
+						{ Symbol S = new Symbol(sym.GREATEREQ, yyline+1, charNum);
+            charNum += 2;
             return S;
           }
 					case -33:
 						break;
 					case 33:
-						{ Symbol S = new Symbol(sym.OUTPUTOP, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
+						{ Symbol S = new Symbol(sym.OUTPUTOP, yyline+1, charNum);
+            charNum += 2;
             return S;
           }
 					case -34:
 						break;
 					case 34:
-						{ Symbol S = new Symbol(sym.LESSEQ, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
+						{ Symbol S = new Symbol(sym.LESSEQ, yyline+1, charNum);
+            charNum += 2;
             return S;
           }
 					case -35:
 						break;
 					case 35:
-						{ Symbol S = new Symbol(sym.EQUALS, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
+						{ Symbol S = new Symbol(sym.EQUALS, yyline+1, charNum);
+            charNum += 2;
             return S;
           }
 					case -36:
 						break;
 					case 36:
-						{ Symbol S = new Symbol(sym.NOTEQUALS, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
+						{ Symbol S = new Symbol(sym.NOTEQUALS, yyline+1, charNum);
+            charNum += 2;
             return S;
           }
 					case -37:
 						break;
 					case 37:
-						{ Symbol S = new Symbol(sym.PLUSPLUS, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
+						{ Symbol S = new Symbol(sym.PLUSPLUS, yyline+1, charNum);
+            charNum += 2;
             return S;
           }
 					case -38:
 						break;
 					case 38:
-						{ Symbol S = new Symbol(sym.MINUSMINUS, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += 2;
+						{ Symbol S = new Symbol(sym.MINUSMINUS, yyline+1, charNum);
+            charNum += 2;
             return S;
           }
 					case -39:
 						break;
 					case 39:
-						{ Symbol S = new Symbol(sym.VOID, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
+						{ Symbol S = new Symbol(sym.VOID, yyline+1, charNum);
+            charNum += yylength();
             return S;
           }
 					case -40:
 						break;
 					case 40:
-						{ Symbol S = new Symbol(sym.ELSE, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
+						{ Symbol S = new Symbol(sym.ELSE, yyline+1, charNum);
+            charNum += yylength();
             return S;
           }
 					case -41:
 						break;
 					case 41:
-						{ Symbol S = new Symbol(sym.READ, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
+						{ Symbol S = new Symbol(sym.READ, yyline+1, charNum);
+            charNum += yylength();
             return S;
           }
 					case -42:
 						break;
 					case 42:
-						{ Symbol S = new Symbol(sym.TRUE, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
+						{ Symbol S = new TokenVal(sym.TRUE, yyline+1, charNum);
+            charNum += yylength();
             return S;
           }
 					case -43:
@@ -739,81 +780,82 @@ return new Symbol(sym.EOF);
 					case 43:
 						{
             // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
+            ErrMsg.fatal(yyline+1, charNum,
                          "string literal with bad escaped character ignored");
-            CharNum.num += yytext().length();
+            charNum += yylength();
           }
 					case -44:
 						break;
 					case 44:
-						{ Symbol S = new Symbol(sym.TUPLE, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
+						{ Symbol S = new Symbol(sym.TUPLE, yyline+1, charNum);
+            charNum += yylength();
             return S;
           }
 					case -45:
 						break;
 					case 45:
-						{ Symbol S = new Symbol(sym.FALSE, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
+						{ Symbol S = new TokenVal(sym.FALSE, yyline+1, charNum);
+            charNum += yylength();
             return S;
           }
 					case -46:
 						break;
 					case 46:
-						{ Symbol S = new Symbol(sym.WRITE, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
+						{ Symbol S = new Symbol(sym.WRITE, yyline+1, charNum);
+            charNum += yylength();
             return S;
           }
 					case -47:
 						break;
 					case 47:
-						{ Symbol S = new Symbol(sym.WHILE, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
+						{ Symbol S = new Symbol(sym.WHILE, yyline+1, charNum);
+            charNum += yylength();
             return S;
           }
 					case -48:
 						break;
 					case 48:
-						{ Symbol S = new Symbol(sym.RETURN, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
+						{ Symbol S = new Symbol(sym.RETURN, yyline+1, charNum);
+            charNum += yylength();
             return S;
           }
 					case -49:
 						break;
 					case 49:
-						{ Symbol S = new Symbol(sym.INTEGER, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
+						{ Symbol S = new Symbol(sym.INTEGER, yyline+1, charNum);
+            charNum += yylength();
             return S;
           }
 					case -50:
 						break;
 					case 50:
-						{ Symbol S = new Symbol(sym.LOGICAL, new TokenVal(yyline+1, CharNum.num));
-            CharNum.num += yytext().length();
+						{ Symbol S = new Symbol(sym.LOGICAL, yyline+1, charNum);
+            charNum += yylength();
             return S;
           }
 					case -51:
 						break;
 					case 52:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -52:
 						break;
 					case 53:
-						{ ErrMsg.fatal(yyline+1, CharNum.num,
+						{ ErrMsg.fatal(yyline+1, charNum,
                          "illegal character ignored: " + yytext());
-            CharNum.num++;
+            charNum++;
           }
 					case -53:
 						break;
 					case 54:
 						{
             // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
+            ErrMsg.fatal(yyline+1, charNum,
              "unterminated string literal with bad escaped character ignored");
           }
 					case -54:
@@ -821,17 +863,18 @@ return new Symbol(sym.EOF);
 					case 55:
 						{
             // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
+            ErrMsg.fatal(yyline+1, charNum,
                          "string literal with bad escaped character ignored");
-            CharNum.num += yytext().length();
+            charNum += yylength();
           }
 					case -55:
 						break;
 					case 56:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -56:
@@ -839,16 +882,17 @@ return new Symbol(sym.EOF);
 					case 57:
 						{
             // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
+            ErrMsg.fatal(yyline+1, charNum,
              "unterminated string literal with bad escaped character ignored");
           }
 					case -57:
 						break;
 					case 58:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -58:
@@ -856,16 +900,17 @@ return new Symbol(sym.EOF);
 					case 59:
 						{
             // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
+            ErrMsg.fatal(yyline+1, charNum,
              "unterminated string literal with bad escaped character ignored");
           }
 					case -59:
 						break;
 					case 60:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -60:
@@ -873,16 +918,17 @@ return new Symbol(sym.EOF);
 					case 61:
 						{
             // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
+            ErrMsg.fatal(yyline+1, charNum,
              "unterminated string literal with bad escaped character ignored");
           }
 					case -61:
 						break;
 					case 62:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -62:
@@ -890,79 +936,87 @@ return new Symbol(sym.EOF);
 					case 63:
 						{
             // bad escape character
-            ErrMsg.fatal(yyline+1, CharNum.num,
+            ErrMsg.fatal(yyline+1, charNum,
              "unterminated string literal with bad escaped character ignored");
           }
 					case -63:
 						break;
 					case 64:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -64:
 						break;
 					case 65:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -65:
 						break;
 					case 66:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -66:
 						break;
 					case 67:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -67:
 						break;
 					case 68:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -68:
 						break;
 					case 69:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -69:
 						break;
 					case 70:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -70:
 						break;
 					case 71:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -71:
@@ -970,277 +1024,307 @@ return new Symbol(sym.EOF);
 					case 72:
 						{
             // unterminated string
-            ErrMsg.fatal(yyline+1, CharNum.num,
+            ErrMsg.fatal(yyline+1, charNum,
                          "unterminated string literal ignored");
           }
 					case -72:
 						break;
 					case 73:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -73:
 						break;
 					case 74:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -74:
 						break;
 					case 75:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -75:
 						break;
 					case 76:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -76:
 						break;
 					case 77:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -77:
 						break;
 					case 78:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -78:
 						break;
 					case 79:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -79:
 						break;
 					case 80:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -80:
 						break;
 					case 81:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -81:
 						break;
 					case 82:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -82:
 						break;
 					case 83:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -83:
 						break;
 					case 84:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -84:
 						break;
 					case 85:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -85:
 						break;
 					case 86:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -86:
 						break;
 					case 87:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -87:
 						break;
 					case 88:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -88:
 						break;
 					case 89:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -89:
 						break;
 					case 90:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -90:
 						break;
 					case 91:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -91:
 						break;
 					case 92:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -92:
 						break;
 					case 93:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -93:
 						break;
 					case 94:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -94:
 						break;
 					case 95:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -95:
 						break;
 					case 96:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -96:
 						break;
 					case 97:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -97:
 						break;
 					case 98:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -98:
 						break;
 					case 99:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -99:
 						break;
 					case 100:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -100:
 						break;
 					case 101:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -101:
 						break;
 					case 102:
 						{
-            Symbol S = new Symbol(sym.ID, 
-                             new IdTokenVal(yyline+1, CharNum.num, yytext()));
-            CharNum.num += yytext().length();
+            // intern the name straight from the buffer; see NameTable
+            String idVal = names.intern(yy_buffer, yy_buffer_start, yylength());
+            Symbol S = new IdTokenVal(sym.ID, yyline+1, charNum, idVal);
+            charNum += yylength();
             return S;
           }
 					case -102:
@@ -384,16 +384,33 @@ public class parser extends java_cup.runtime.lr_parser {
 
 
 
+/* When false, a syntax error makes parse() throw instead of exiting, so
+ * that a driver analyzing many files can go on to the next one.
+ */
+public boolean exitOnError = true;
+
 public void syntax_error(Symbol currToken) {
-    if (currToken.value == null) {
+    if (currToken.sym == sym.EOF) {
         ErrMsg.fatal(0,0, "Syntax error at end of file");
     }
-    else {
+    else if (currToken.value instanceof TokenVal) {
         ErrMsg.fatal(((TokenVal)currToken.value).lineNum,
                      ((TokenVal)currToken.value).charNum,
                      "Syntax error");
     }
-    System.exit(-1);
+    else {
+        // tokens without a value keep their position in left and right
+        ErrMsg.fatal(currToken.left, currToken.right, "Syntax error");
+    }
+    if (exitOnError) {
+        ErrMsg.flush();
+        System.exit(-1);
+    }
+}
+
+public void unrecovered_syntax_error(Symbol currToken) throws Exception {
+    done_parsing();
+    throw new Exception("unrecovered syntax error");
 }
 
 